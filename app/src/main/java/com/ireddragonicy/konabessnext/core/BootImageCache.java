@@ -0,0 +1,177 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent cache of prepared boot images, keyed by the SHA-256 of the boot
+ * or vendor_boot partition. Each entry keeps the split N.dtb blobs, the
+ * decoded N.dts sources, the repack manifest and a small metadata file, so an
+ * unchanged partition can be restored without dd, unpack, split or decode.
+ * Entries are evicted least recently used first once the cache grows past
+ * its size limit.
+ * <p>
+ * The metadata also records the version of the code that produced the
+ * entry, as a newer app may split, detect or decode the same image
+ * differently. An entry of another version counts as a miss.
+ */
+public class BootImageCache {
+    public static final String DIR_NAME = "boot_cache";
+    private static final String META_NAME = "meta.properties";
+    private static final String META_VERSION = "version";
+    private static final Pattern CACHED_FILE = Pattern.compile("\\d+\\.dt[bs]|dts_manifest");
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final File root;
+    private final long maxBytes;
+    private final String version;
+
+    /**
+     * @param version identifies the code that fills the cache, entries stored
+     *                under another version are ignored
+     */
+    public BootImageCache(File filesDir, long maxBytes, String version) {
+        this.root = new File(filesDir, DIR_NAME);
+        this.maxBytes = maxBytes;
+        this.version = version;
+    }
+
+    public static boolean isValidKey(String hash) {
+        return hash != null && SHA256.matcher(hash).matches();
+    }
+
+    /**
+     * @return the metadata stored for this image, or null on a cache miss
+     */
+    public Properties lookup(String hash) {
+        File meta = new File(new File(root, hash), META_NAME);
+        if (!isValidKey(hash) || !meta.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(meta)) {
+            properties.load(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (!version.equals(properties.getProperty(META_VERSION))) {
+            return null;
+        }
+        return properties;
+    }
+
+    /**
+     * Copy the cached DTB/DTS files of an entry into the working directory and
+     * mark the entry as most recently used.
+     */
+    public void restore(String hash, File workDir) throws IOException {
+        File entry = new File(root, hash);
+        copyCachedFiles(entry, workDir);
+        new File(entry, META_NAME).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Snapshot the working directory's DTB/DTS files as the entry for this
+     * image, then evict old entries until the cache fits its limit again.
+     */
+    public void store(String hash, File workDir, Properties meta) throws IOException {
+        if (!isValidKey(hash)) {
+            throw new IOException("Invalid cache key: " + hash);
+        }
+        File entry = new File(root, hash);
+        deleteRecursively(entry);
+        if (!entry.mkdirs()) {
+            throw new IOException("Failed to create cache entry " + entry);
+        }
+        try {
+            copyCachedFiles(workDir, entry);
+            // Metadata goes last, an entry without it is never used
+            Properties versioned = new Properties();
+            versioned.putAll(meta);
+            versioned.setProperty(META_VERSION, version);
+            try (OutputStream out = new FileOutputStream(new File(entry, META_NAME))) {
+                versioned.store(out, null);
+            }
+        } catch (IOException e) {
+            deleteRecursively(entry);
+            throw e;
+        }
+        evict(hash);
+    }
+
+    private void evict(String keep) {
+        File[] entries = root.listFiles(File::isDirectory);
+        if (entries == null) {
+            return;
+        }
+
+        List<File> byAge = new ArrayList<>(Arrays.asList(entries));
+        byAge.sort((a, b) -> Long.compare(lastUsed(a), lastUsed(b)));
+
+        long total = 0;
+        for (File entry : byAge) {
+            total += sizeOf(entry);
+        }
+        for (File entry : byAge) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (entry.getName().equals(keep)) {
+                continue;
+            }
+            total -= sizeOf(entry);
+            deleteRecursively(entry);
+        }
+    }
+
+    private static long lastUsed(File entry) {
+        // Entries without metadata are leftovers of a failed store, drop them first
+        File meta = new File(entry, META_NAME);
+        return meta.exists() ? meta.lastModified() : 0;
+    }
+
+    private static void copyCachedFiles(File from, File to) throws IOException {
+        File[] files = from.listFiles((dir, name) -> CACHED_FILE.matcher(name).matches());
+        if (files == null) {
+            throw new IOException("Cannot list " + from);
+        }
+        for (File file : files) {
+            // Keep mtimes so the repack manifest still recognises clean sources
+            Files.copy(file.toPath(), new File(to, file.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static long sizeOf(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
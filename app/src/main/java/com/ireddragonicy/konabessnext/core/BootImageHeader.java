@@ -0,0 +1,183 @@
+package com.ireddragonicy.konabessnext.core;
+
+import com.ireddragonicy.konabessnext.core.fdt.FdtReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an Android boot image (header v0-v4) or vendor_boot image (v3/v4)
+ * header and locates the DTB data inside it, so the DTBs can be split
+ * straight out of boot.img without running "magiskboot unpack".
+ * <p>
+ * Two regions are reported, matching what magiskboot would extract:
+ * the dedicated DTB section ("dtb", boot v2 and vendor_boot) and the DTBs
+ * appended to the kernel ("kernel_dtb").
+ */
+public class BootImageHeader {
+    private static final String BOOT_MAGIC = "ANDROID!";
+    private static final String VENDOR_BOOT_MAGIC = "VNDRBOOT";
+    private static final int BOOT_V3_PAGE_SIZE = 4096;
+    private static final int FDT_BEGIN_NODE = 0x1;
+
+    public final boolean vendorBoot;
+    public final int headerVersion;
+    public final int pageSize;
+
+    public long dtbOffset;
+    public long dtbSize;
+    public long kernelDtbOffset;
+    public long kernelDtbSize;
+
+    private BootImageHeader(boolean vendorBoot, int headerVersion, int pageSize) {
+        this.vendorBoot = vendorBoot;
+        this.headerVersion = headerVersion;
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasDtb() {
+        return dtbSize > 0;
+    }
+
+    public boolean hasKernelDtb() {
+        return kernelDtbSize > 0;
+    }
+
+    public static BootImageHeader parse(File image) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(image, "r");
+                FileChannel channel = raf.getChannel()) {
+            return parse(channel);
+        }
+    }
+
+    /**
+     * @throws IOException if the image is not an AOSP boot/vendor_boot image
+     *         this parser understands (vendor specific formats are left to magiskboot)
+     */
+    public static BootImageHeader parse(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(fileSize, 4096)).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(head, 0);
+        if (head.position() < 2128) {
+            throw new IOException("Boot image too small");
+        }
+
+        String magic = new String(head.array(), 0, 8, StandardCharsets.US_ASCII);
+        BootImageHeader header;
+        if (BOOT_MAGIC.equals(magic)) {
+            header = parseBoot(head, channel);
+        } else if (VENDOR_BOOT_MAGIC.equals(magic)) {
+            header = parseVendorBoot(head);
+        } else {
+            throw new IOException("Unknown boot image magic");
+        }
+
+        if (header.dtbOffset + header.dtbSize > fileSize
+                || header.kernelDtbOffset + header.kernelDtbSize > fileSize) {
+            throw new IOException("Boot image sections out of bounds");
+        }
+        return header;
+    }
+
+    private static BootImageHeader parseBoot(ByteBuffer head, FileChannel channel) throws IOException {
+        // v0-v2 keep the version after page_size, v3+ moved it to offset 40 as well
+        int version = head.getInt(40);
+        if (version < 0 || version > 4) {
+            throw new IOException("Unsupported boot header version: " + version);
+        }
+
+        long kernelSize = unsigned(head.getInt(8));
+        long kernelOffset;
+        BootImageHeader header;
+
+        if (version >= 3) {
+            header = new BootImageHeader(false, version, BOOT_V3_PAGE_SIZE);
+            kernelOffset = BOOT_V3_PAGE_SIZE;
+        } else {
+            int pageSize = head.getInt(36);
+            if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+                throw new IOException("Invalid boot image page size: " + pageSize);
+            }
+            header = new BootImageHeader(false, version, pageSize);
+            kernelOffset = pageSize;
+
+            if (version == 2) {
+                long ramdiskSize = unsigned(head.getInt(16));
+                long secondSize = unsigned(head.getInt(24));
+                long recoveryDtboSize = unsigned(head.getInt(1632));
+                header.dtbSize = unsigned(head.getInt(1648));
+                header.dtbOffset = kernelOffset + header.pages(kernelSize) + header.pages(ramdiskSize)
+                        + header.pages(secondSize) + header.pages(recoveryDtboSize);
+            }
+        }
+
+        findKernelDtb(header, channel, kernelOffset, kernelSize);
+        return header;
+    }
+
+    private static BootImageHeader parseVendorBoot(ByteBuffer head) throws IOException {
+        int version = head.getInt(8);
+        if (version != 3 && version != 4) {
+            throw new IOException("Unsupported vendor_boot header version: " + version);
+        }
+        int pageSize = head.getInt(12);
+        if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+            throw new IOException("Invalid vendor_boot page size: " + pageSize);
+        }
+
+        BootImageHeader header = new BootImageHeader(true, version, pageSize);
+        long vendorRamdiskSize = unsigned(head.getInt(24));
+        long headerSize = unsigned(head.getInt(2096));
+        header.dtbSize = unsigned(head.getInt(2100));
+        header.dtbOffset = header.pages(headerSize) + header.pages(vendorRamdiskSize);
+        return header;
+    }
+
+    /**
+     * Same rule magiskboot uses for "kernel_dtb": the first FDT header inside
+     * the kernel whose size fits and whose structure block starts with a node
+     * marks the start of the appended DTBs, which run to the end of the kernel.
+     */
+    private static void findKernelDtb(BootImageHeader header, FileChannel channel, long kernelOffset,
+            long kernelSize) throws IOException {
+        if (kernelSize < FdtReader.FDT_HEADER_SIZE || kernelSize > Integer.MAX_VALUE
+                || kernelOffset + kernelSize > channel.size()) {
+            return;
+        }
+        MappedByteBuffer kernel = channel.map(FileChannel.MapMode.READ_ONLY, kernelOffset, kernelSize);
+        kernel.order(ByteOrder.BIG_ENDIAN);
+        int limit = (int) kernelSize;
+
+        for (int i = 0; i + FdtReader.FDT_HEADER_SIZE <= limit; i++) {
+            if (kernel.getInt(i) != FdtReader.FDT_MAGIC) {
+                continue;
+            }
+            int totalSize = kernel.getInt(i + 4);
+            int structOffset = kernel.getInt(i + 8);
+            if (totalSize < FdtReader.FDT_HEADER_SIZE || totalSize > limit - i
+                    || structOffset < 0 || structOffset > totalSize - 4) {
+                continue;
+            }
+            if (kernel.getInt(i + structOffset) != FDT_BEGIN_NODE) {
+                continue;
+            }
+            header.kernelDtbOffset = kernelOffset + i;
+            header.kernelDtbSize = kernelSize - i;
+            return;
+        }
+    }
+
+    private long pages(long size) {
+        return (size + pageSize - 1) / pageSize * pageSize;
+    }
+
+    private static long unsigned(int value) {
+        return value & 0xFFFFFFFFL;
+    }
+}
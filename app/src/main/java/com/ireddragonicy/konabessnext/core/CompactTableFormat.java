@@ -0,0 +1,360 @@
+package com.ireddragonicy.konabessnext.core;
+
+import com.ireddragonicy.konabessnext.model.Bin;
+import com.ireddragonicy.konabessnext.model.Level;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary form of an exported config, used in place of the JSON
+ * inside the gzip of an export. Instead of DTS text it stores the bins as
+ * level records: the known level properties as varints, delta encoded
+ * against the same property of the level before, and every other line as
+ * an index into a table of distinct strings. Volt tables are stored as
+ * delta encoded frequency/volt pairs.
+ * <p>
+ * Layout, all numbers unsigned varints unless noted:
+ * <pre>
+ * magic (4 bytes "KBEX"), format version
+ * chip, description                       (as strings)
+ * string count, strings                   (length + UTF-8 bytes)
+ * bin count, per bin:
+ *   id, header line count, string indices
+ *   level count, per level:
+ *     entry count, per entry:
+ *       0, string index                   (line kept as is)
+ *       (property ordinal + 1) * 2 + hex, zigzag delta
+ * opp count + 1 (0 when there is no volt table), per opp:
+ *   zigzag delta of frequency, zigzag delta of volt
+ * </pre>
+ */
+public class CompactTableFormat {
+    private static final byte[] MAGIC = { 'K', 'B', 'E', 'X' };
+    private static final int FORMAT_VERSION = 1;
+    // Chip names and descriptions are short, anything longer is damage
+    private static final int MAX_HEADER_STRING = 64 * 1024;
+    private static final Level.Property[] PROPERTIES = Level.Property.values();
+
+    /**
+     * An exported config. The opp arrays are null if the chip has no volt
+     * table, the bins too if only the header was read.
+     */
+    public static class Config {
+        public final String chip;
+        public final String description;
+        public final ArrayList<Bin> bins;
+        public final long[] oppFrequencies;
+        public final long[] oppVolts;
+
+        public Config(String chip, String description, ArrayList<Bin> bins,
+                long[] oppFrequencies, long[] oppVolts) {
+            this.chip = chip;
+            this.description = description;
+            this.bins = bins;
+            this.oppFrequencies = oppFrequencies;
+            this.oppVolts = oppVolts;
+        }
+    }
+
+    private CompactTableFormat() {
+    }
+
+    /**
+     * Peek at a decompressed export payload.
+     *
+     * @param in stream supporting mark/reset, left where it was
+     * @return whether the payload is in this format rather than JSON
+     */
+    public static boolean isCompact(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != (b & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public static void write(OutputStream out, Config config) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(16 * 1024);
+
+        writeVarint(body, config.bins.size());
+        long[] previous = new long[PROPERTIES.length];
+        for (Bin bin : config.bins) {
+            writeVarint(body, bin.id);
+            writeVarint(body, bin.header.size());
+            for (String line : bin.header) {
+                writeVarint(body, indexOf(strings, line));
+            }
+            writeVarint(body, bin.levels.size());
+            Arrays.fill(previous, 0);
+            for (Level level : bin.levels) {
+                int count = level.getLineCount();
+                writeVarint(body, count);
+                for (int i = 0; i < count; i++) {
+                    Level.Property property = level.getProperty(i);
+                    if (property == null) {
+                        writeVarint(body, 0);
+                        writeVarint(body, indexOf(strings, level.lines.get(i)));
+                        continue;
+                    }
+                    long value = level.getValue(property);
+                    writeVarint(body, (property.ordinal() + 1) * 2 + (level.isHex(property) ? 1 : 0));
+                    writeVarint(body, zigzag(value - previous[property.ordinal()]));
+                    previous[property.ordinal()] = value;
+                }
+            }
+        }
+
+        if (config.oppFrequencies == null) {
+            writeVarint(body, 0);
+        } else {
+            writeVarint(body, config.oppFrequencies.length + 1);
+            long frequency = 0;
+            long volt = 0;
+            for (int i = 0; i < config.oppFrequencies.length; i++) {
+                writeVarint(body, zigzag(config.oppFrequencies[i] - frequency));
+                writeVarint(body, zigzag(config.oppVolts[i] - volt));
+                frequency = config.oppFrequencies[i];
+                volt = config.oppVolts[i];
+            }
+        }
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream(4 * 1024);
+        head.write(MAGIC);
+        writeVarint(head, FORMAT_VERSION);
+        writeString(head, config.chip);
+        writeString(head, config.description);
+        writeVarint(head, strings.size());
+        for (String string : strings.keySet()) {
+            writeString(head, string);
+        }
+        head.writeTo(out);
+        body.writeTo(out);
+    }
+
+    /**
+     * Read the start of a config, up to and including the chip and
+     * description, without touching the tables after it.
+     *
+     * @return the config without tables
+     * @throws IOException if it is not a config of a known version
+     */
+    public static Config readHeader(InputStream in) throws IOException {
+        for (byte b : MAGIC) {
+            if (in.read() != (b & 0xFF)) {
+                throw new IOException("Not a compact config");
+            }
+        }
+        if (readVarint(in) != FORMAT_VERSION) {
+            throw new IOException("Unknown config format");
+        }
+        String chip = readHeaderString(in);
+        String description = readHeaderString(in);
+        return new Config(chip, description, null, null, null);
+    }
+
+    /**
+     * Read the tables following the header, up to the end of the stream.
+     *
+     * @throws IOException if they are not valid
+     */
+    public static Config readTables(Config header, InputStream stream) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+        byte[] chunk = new byte[8192];
+        int count;
+        while ((count = stream.read(chunk)) != -1) {
+            buffer.write(chunk, 0, count);
+        }
+        Reader in = new Reader(buffer.toByteArray());
+        String[] strings = new String[in.count()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.string();
+        }
+
+        int binCount = in.count();
+        ArrayList<Bin> bins = new ArrayList<>(binCount);
+        long[] previous = new long[PROPERTIES.length];
+        for (int i = 0; i < binCount; i++) {
+            Bin bin = new Bin(in.index(Integer.MAX_VALUE));
+            int headerCount = in.count();
+            bin.header.ensureCapacity(headerCount);
+            for (int j = 0; j < headerCount; j++) {
+                bin.header.add(strings[in.index(strings.length)]);
+            }
+            int levelCount = in.count();
+            bin.levels.ensureCapacity(levelCount);
+            Arrays.fill(previous, 0);
+            for (int j = 0; j < levelCount; j++) {
+                Level level = new Level();
+                int entryCount = in.count();
+                for (int k = 0; k < entryCount; k++) {
+                    int tag = in.index(PROPERTIES.length * 2 + 2);
+                    if (tag == 0) {
+                        level.addLine(strings[in.index(strings.length)]);
+                        continue;
+                    }
+                    if (tag == 1) {
+                        throw new IOException("Corrupt config");
+                    }
+                    Level.Property property = PROPERTIES[tag / 2 - 1];
+                    long value = previous[property.ordinal()] + unzigzag(in.varint());
+                    if (value < 0 || level.has(property)) {
+                        throw new IOException("Corrupt config");
+                    }
+                    level.addValue(property, value, (tag & 1) != 0);
+                    previous[property.ordinal()] = value;
+                }
+                bin.levels.add(level);
+            }
+            bins.add(bin);
+        }
+
+        long[] frequencies = null;
+        long[] volts = null;
+        int oppCount = in.count() - 1;
+        if (oppCount >= 0) {
+            frequencies = new long[oppCount];
+            volts = new long[oppCount];
+            long frequency = 0;
+            long volt = 0;
+            for (int i = 0; i < oppCount; i++) {
+                frequency += unzigzag(in.varint());
+                volt += unzigzag(in.varint());
+                frequencies[i] = frequency;
+                volts[i] = volt;
+            }
+        }
+        return new Config(header.chip, header.description, bins, frequencies, volts);
+    }
+
+    private static int indexOf(Map<String, Integer> strings, String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated config");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt config");
+    }
+
+    private static String readHeaderString(InputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length > MAX_HEADER_STRING) {
+            throw new IOException("Corrupt config");
+        }
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = in.read(bytes, offset, bytes.length - offset);
+            if (count < 0) {
+                throw new IOException("Truncated config");
+            }
+            offset += count;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Bounds checked reading over the whole payload, anything out of range
+     * is reported as a corrupt config.
+     */
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IOException("Truncated config");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt config");
+        }
+
+        /**
+         * A count of items that each take at least one more byte, so it can
+         * never be more than what is left.
+         */
+        int count() throws IOException {
+            return index(data.length - position + 1);
+        }
+
+        int index(int limit) throws IOException {
+            long value = varint();
+            if (value < 0 || value >= limit) {
+                throw new IOException("Corrupt config");
+            }
+            return (int) value;
+        }
+
+        String string() throws IOException {
+            int length = count();
+            if (length > data.length - position) {
+                throw new IOException("Truncated config");
+            }
+            String string = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return string;
+        }
+    }
+}
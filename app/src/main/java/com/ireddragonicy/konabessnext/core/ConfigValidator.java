@@ -0,0 +1,125 @@
+package com.ireddragonicy.konabessnext.core;
+
+import com.ireddragonicy.konabessnext.R;
+import com.ireddragonicy.konabessnext.model.Bin;
+import com.ireddragonicy.konabessnext.model.Level;
+import com.ireddragonicy.konabessnext.utils.DtsHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sanity checks for an imported frequency table before it can be applied:
+ * every bin has between one and {@link ChipInfo.type#maxTableLevels}
+ * levels, and no level has a higher frequency than the one before it, as
+ * the GPU expects level 0 to be the fastest. Equal neighbours are allowed,
+ * since a table may list a frequency twice with other bus or voltage
+ * settings.
+ */
+class ConfigValidator {
+    /**
+     * A failed check, as a string resource and its format arguments.
+     */
+    static class Problem {
+        final int messageRes;
+        final Object[] args;
+
+        Problem(int messageRes, Object... args) {
+            this.messageRes = messageRes;
+            this.args = args;
+        }
+    }
+
+    private ConfigValidator() {
+    }
+
+    /**
+     * @param frequencies per bin, the frequency of each level in Hz, -1 where
+     *                    a level has none
+     * @return the first problem found, or null if the table is fine
+     */
+    static Problem check(ChipInfo.type chip, List<long[]> frequencies) {
+        if (frequencies.isEmpty()) {
+            return new Problem(R.string.bulk_import_no_table);
+        }
+        for (int bin = 0; bin < frequencies.size(); bin++) {
+            long[] levels = frequencies.get(bin);
+            if (levels.length == 0 || levels.length > chip.maxTableLevels) {
+                return new Problem(R.string.bulk_import_level_count, bin, levels.length, chip.maxTableLevels);
+            }
+            for (int level = 0; level < levels.length; level++) {
+                if (levels[level] <= 0) {
+                    return new Problem(R.string.bulk_import_no_frequency, bin, level);
+                }
+                if (level > 0 && levels[level] > levels[level - 1]) {
+                    return new Problem(R.string.bulk_import_frequency_order, bin, level);
+                }
+            }
+        }
+        return null;
+    }
+
+    static List<long[]> frequencies(List<Bin> bins) {
+        List<long[]> frequencies = new ArrayList<>(bins.size());
+        for (Bin bin : bins) {
+            long[] levels = new long[bin.levels.size()];
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = frequency(bin.levels.get(i));
+            }
+            frequencies.add(levels);
+        }
+        return frequencies;
+    }
+
+    /**
+     * @return the frequency of the level, also when its line is kept as is
+     *         (e.g. upper case hex), or -1 if it has none
+     */
+    private static long frequency(Level level) {
+        if (level.has(Level.Property.GPU_FREQ)) {
+            return level.getFrequency();
+        }
+        for (String line : level.lines) {
+            if (line.trim().startsWith(Level.Property.GPU_FREQ.key)) {
+                try {
+                    return DtsHelper.decode_int_line(line).value;
+                } catch (Exception e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frequencies from the frequency table text of a JSON config, as written
+     * by {@link GpuTableEditor#genTable()}.
+     */
+    static List<long[]> frequencies(String table) throws Exception {
+        List<List<Long>> bins = new ArrayList<>();
+        for (String line : table.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("qcom,gpu-pwrlevels")) {
+                bins.add(new ArrayList<>());
+            } else if (line.startsWith("qcom,gpu-pwrlevel@")) {
+                if (bins.isEmpty())
+                    throw new Exception();
+                bins.get(bins.size() - 1).add(-1L);
+            } else if (line.startsWith(Level.Property.GPU_FREQ.key)) {
+                List<Long> levels = bins.isEmpty() ? null : bins.get(bins.size() - 1);
+                if (levels == null || levels.isEmpty())
+                    throw new Exception();
+                levels.set(levels.size() - 1, DtsHelper.decode_int_line(line).value);
+            }
+        }
+        List<long[]> frequencies = new ArrayList<>(bins.size());
+        for (List<Long> levels : bins) {
+            long[] array = new long[levels.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = levels.get(i);
+            }
+            frequencies.add(array);
+        }
+        return frequencies;
+    }
+}
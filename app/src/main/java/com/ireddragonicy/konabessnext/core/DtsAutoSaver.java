@@ -0,0 +1,159 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind saver for the GPU table auto-save. Every edit hands in the
+ * newest DTS and restarts the delay; the DTS is written on a background
+ * thread once no edit came in for the whole delay, so a burst of edits
+ * (e.g. dragging a slider) turns into a single write of the latest state.
+ * <p>
+ * Anything that reads the DTS file or may end the process must call
+ * {@link #flush()} first so the pending state is on disk. All writes go
+ * through one lock, so an older state can never overwrite a newer one.
+ */
+public class DtsAutoSaver {
+    public static final long DELAY_MS = 750;
+
+    /**
+     * Told about the outcome of a write, on the thread that did it.
+     */
+    public interface Callback {
+        void onSaved(String path, long version);
+
+        void onFailed(String path, long version, IOException e);
+    }
+
+    private static class Pending {
+        final String path;
+        final List<String> lines;
+        final long version;
+        final Callback callback;
+
+        Pending(String path, List<String> lines, long version, Callback callback) {
+            this.path = path;
+            this.lines = lines;
+            this.version = version;
+            this.callback = callback;
+        }
+    }
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dts-autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Held for the whole write, pending/scheduled only under stateLock
+    private static final Object writeLock = new Object();
+    private static final Object stateLock = new Object();
+    private static Pending pending;
+    private static ScheduledFuture<?> scheduled;
+
+    /**
+     * Queue a DTS to be written after {@code delayMs} without newer edits,
+     * replacing whatever was queued before. A pending DTS of another file is
+     * written right away first.
+     *
+     * @param lines   the full DTS, must not be modified afterwards
+     * @param version edit version of the state, passed back to the callback
+     */
+    public static void schedule(String path, List<String> lines, long version, long delayMs, Callback callback) {
+        Pending queued;
+        synchronized (stateLock) {
+            queued = pending;
+        }
+        if (queued != null && !queued.path.equals(path)) {
+            flush();
+        }
+        synchronized (stateLock) {
+            cancelScheduled();
+            pending = new Pending(path, lines, version, callback);
+            scheduled = WRITER.schedule(DtsAutoSaver::flush, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the pending DTS now, on the calling thread.
+     *
+     * @return false if there was one and writing it failed
+     */
+    public static boolean flush() {
+        synchronized (writeLock) {
+            Pending job;
+            synchronized (stateLock) {
+                job = pending;
+                pending = null;
+                cancelScheduled();
+            }
+            if (job == null) {
+                return true;
+            }
+            try {
+                DtsFileWriter.write(job.path, job.lines);
+            } catch (IOException e) {
+                e.printStackTrace();
+                if (job.callback != null) {
+                    job.callback.onFailed(job.path, job.version, e);
+                }
+                return false;
+            }
+            if (job.callback != null) {
+                job.callback.onSaved(job.path, job.version);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Write the pending DTS on the writer thread now instead of after the
+     * delay, without waiting for it.
+     *
+     * @param done run on the writer thread afterwards, may be null
+     */
+    public static void flushInBackground(Runnable done) {
+        WRITER.execute(() -> {
+            try {
+                flush();
+            } finally {
+                if (done != null) {
+                    done.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Write a DTS right away, dropping the pending one since it is older.
+     */
+    public static void writeNow(String path, List<String> lines) throws IOException {
+        synchronized (writeLock) {
+            synchronized (stateLock) {
+                if (pending != null && pending.path.equals(path)) {
+                    pending = null;
+                    cancelScheduled();
+                }
+            }
+            flush();
+            DtsFileWriter.write(path, lines);
+        }
+    }
+
+    public static boolean hasPending() {
+        synchronized (stateLock) {
+            return pending != null;
+        }
+    }
+
+    private static void cancelScheduled() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the state of every N.dts at the time its N.dtb was known to match
+ * it, so a repack only has to recompile the sources that were edited since.
+ * A source counts as unchanged when its mtime and length are the same, or,
+ * if only the mtime moved, when its SHA-256 is the same.
+ */
+public class DtsChangeTracker {
+    private static final String MANIFEST_NAME = "dts_manifest";
+
+    private static class Entry {
+        final long modified;
+        final long length;
+        final String hash;
+
+        Entry(long modified, long length, String hash) {
+            this.modified = modified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private final File dir;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public DtsChangeTracker(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Load the manifest written by a previous {@link #save()}, if any.
+     */
+    public static DtsChangeTracker load(File dir) {
+        DtsChangeTracker tracker = new DtsChangeTracker(dir);
+        File manifest = new File(dir, MANIFEST_NAME);
+        if (!manifest.exists()) {
+            return tracker;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length != 4) {
+                    continue;
+                }
+                tracker.entries.put(Integer.parseInt(parts[0]),
+                        new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A damaged manifest only means everything gets recompiled
+            tracker.entries.clear();
+        }
+        return tracker;
+    }
+
+    public void save() throws IOException {
+        File manifest = new File(dir, MANIFEST_NAME);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(manifest))) {
+            for (Map.Entry<Integer, Entry> e : new TreeMap<>(entries).entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + " " + entry.modified + " " + entry.length + " " + entry.hash);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Mark the current content of N.dts as matching N.dtb.
+     */
+    public void markClean(int index) throws IOException {
+        File source = dtsFile(index);
+        entries.put(index, new Entry(source.lastModified(), source.length(), hash(source)));
+    }
+
+    public void forget(int index) {
+        entries.remove(index);
+    }
+
+    /**
+     * @return true when N.dts has no recorded state or differs from it
+     */
+    public boolean isDirty(int index) throws IOException {
+        Entry entry = entries.get(index);
+        File source = dtsFile(index);
+        if (entry == null || !source.exists() || source.length() != entry.length) {
+            return true;
+        }
+        if (source.lastModified() == entry.modified) {
+            return false;
+        }
+        // Touched but maybe rewritten with the same content (e.g. undo to the saved state)
+        if (!hash(source).equals(entry.hash)) {
+            return true;
+        }
+        entries.put(index, new Entry(source.lastModified(), entry.length, entry.hash));
+        return false;
+    }
+
+    private File dtsFile(int index) {
+        return new File(dir, index + ".dts");
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,356 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A DTS file read once and split into a node tree, where every node knows the
+ * line range it covers. GpuTableEditor, GpuVoltEditor and GpuTableRepository
+ * all load the current DTS through here and look up their tables by node
+ * instead of each reading and scanning the file on their own.
+ * <p>
+ * The last loaded document is kept until the file changes on disk or is
+ * invalidated by a writer, so loading the same DTB again is free. The node
+ * tree is only built the first time it is needed, callers that already
+ * know their line ranges (see {@link GpuTableSnapshot}) never pay for it.
+ */
+public class DtsDocument {
+    /**
+     * A node of the DTS, from its "name {" line to its closing "};" line.
+     */
+    public static class Node {
+        private final Node parent;
+        private final String name;
+        private final String label;
+        private final int startLine;
+        private int endLine;
+        private final List<Node> children = new ArrayList<>();
+
+        private Node(Node parent, String name, String label, int startLine) {
+            this.parent = parent;
+            this.name = name;
+            this.label = label;
+            this.startLine = startLine;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the label in front of the node name, or null if there is none
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        public String getPath() {
+            if (parent == null || parent.parent == null) {
+                return name;
+            }
+            String parentPath = parent.getPath();
+            return parentPath.endsWith("/") ? parentPath + name : parentPath + "/" + name;
+        }
+
+        public int getStartLine() {
+            return startLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public Node findChild(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static DtsDocument current;
+
+    private final String path;
+    private final long modified;
+    private final long length;
+    private final List<String> lines;
+    private Node root;
+
+    private DtsDocument(String path, long modified, long length, List<String> lines) {
+        this.path = path;
+        this.modified = modified;
+        this.length = length;
+        this.lines = lines;
+    }
+
+    /**
+     * Get the document for a DTS file, parsing it only if it is not the one
+     * loaded last or has changed since.
+     */
+    public static synchronized DtsDocument load(String path) throws IOException {
+        File file = new File(path);
+        if (current != null && current.path.equals(path)
+                && current.modified == file.lastModified() && current.length == file.length()) {
+            return current;
+        }
+        current = null;
+        current = parse(file);
+        return current;
+    }
+
+    /**
+     * Drop the cached document of a file that was just rewritten.
+     */
+    public static synchronized void invalidate(String path) {
+        if (current != null && current.path.equals(path)) {
+            current = null;
+        }
+    }
+
+    public static synchronized void clear() {
+        current = null;
+    }
+
+    private static DtsDocument parse(File file) throws IOException {
+        long modified = file.lastModified();
+        long length = file.length();
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return new DtsDocument(file.getPath(), modified, length, Collections.unmodifiableList(lines));
+    }
+
+    private synchronized Node root() throws IOException {
+        if (root == null) {
+            root = buildTree();
+        }
+        return root;
+    }
+
+    private Node buildTree() throws IOException {
+        Node root = new Node(null, "", null, 0);
+        Deque<Node> open = new ArrayDeque<>();
+        open.push(root);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int first = firstNonSpace(line);
+            int last = lastNonSpace(line);
+            if (first > last) {
+                continue;
+            }
+            if (line.charAt(last) == '{') {
+                String header = line.substring(first, last).trim();
+                String label = null;
+                int colon = header.lastIndexOf(": ");
+                if (colon >= 0) {
+                    label = header.substring(0, colon);
+                    header = header.substring(colon + 2);
+                }
+                Node node = new Node(open.peek(), header, label, i);
+                open.peek().children.add(node);
+                open.push(node);
+            } else if (line.charAt(first) == '}') {
+                if (open.size() == 1) {
+                    throw new IOException("Unbalanced '}' at line " + (i + 1) + " of " + path);
+                }
+                open.pop().endLine = i;
+            }
+        }
+        if (open.size() != 1) {
+            throw new IOException("Unclosed node " + open.peek().getPath() + " in " + path);
+        }
+        root.endLine = lines.size() - 1;
+        return root;
+    }
+
+    private static int firstNonSpace(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int lastNonSpace(String line) {
+        int i = line.length() - 1;
+        while (i >= 0 && line.charAt(i) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * @return mtime of the file when it was read
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * @return length of the file when it was read
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the lines of a node, including its opening and closing line
+     */
+    public List<String> getLines(Node node) {
+        return lines.subList(node.startLine, node.endLine + 1);
+    }
+
+    /**
+     * @return the top level of the document, its children are the "/" nodes
+     */
+    public Node getRoot() throws IOException {
+        return root();
+    }
+
+    /**
+     * Look up a node by its full path, e.g. "/soc/qcom,kgsl-3d0@3d00000".
+     */
+    public Node findByPath(String nodePath) throws IOException {
+        Node node = root().findChild("/");
+        if (node == null) {
+            return null;
+        }
+        for (String part : nodePath.split("/")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            node = node.findChild(part);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the first node in file order that matches, or null
+     */
+    public Node findFirst(Predicate<Node> predicate) throws IOException {
+        List<Node> found = new ArrayList<>();
+        collect(root(), predicate, found, true);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * @return all matching nodes in file order; the children of a match are
+     *         not searched, so the returned ranges never overlap
+     */
+    public List<Node> findAll(Predicate<Node> predicate) throws IOException {
+        List<Node> found = new ArrayList<>();
+        collect(root(), predicate, found, false);
+        return found;
+    }
+
+    private static boolean collect(Node node, Predicate<Node> predicate, List<Node> found, boolean firstOnly) {
+        for (Node child : node.children) {
+            if (predicate.test(child)) {
+                found.add(child);
+                if (firstOnly) {
+                    return true;
+                }
+            } else if (collect(child, predicate, found, firstOnly)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The document lines with the given nodes cut out. The result shares the
+     * document's lines instead of copying them.
+     *
+     * @param nodes non-overlapping nodes in file order, as returned by {@link #findAll}
+     */
+    public DtsPieceTable linesWithout(List<Node> nodes) {
+        int[] starts = new int[nodes.size()];
+        int[] ends = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            starts[i] = nodes.get(i).startLine;
+            ends[i] = nodes.get(i).endLine;
+        }
+        return linesWithout(starts, ends);
+    }
+
+    /**
+     * The document lines with the line ranges {@code [starts[i], ends[i]]}
+     * cut out, which must be in order and not overlap.
+     */
+    public DtsPieceTable linesWithout(int[] starts, int[] ends) {
+        DtsPieceTable result = new DtsPieceTable();
+        int next = 0;
+        for (int i = 0; i < starts.length; i++) {
+            result.append(lines.subList(next, starts[i]));
+            next = ends[i] + 1;
+        }
+        result.append(lines.subList(next, lines.size()));
+        return result;
+    }
+
+    /**
+     * The document lines with several tables replaced in one go. Table
+     * {@code t} is made of the line ranges {@code [starts[t][i], ends[t][i]]},
+     * in order; they are cut out and {@code tables.get(t)} is put where the
+     * first of them started. The ranges of all tables must not overlap.
+     *
+     * @throws IOException if a table has no ranges or ranges overlap
+     */
+    public DtsPieceTable linesReplacing(int[][] starts, int[][] ends, List<List<String>> tables)
+            throws IOException {
+        List<int[]> ranges = new ArrayList<>();
+        for (int t = 0; t < starts.length; t++) {
+            if (starts[t].length == 0) {
+                throw new IOException("Table " + t + " not found");
+            }
+            for (int i = 0; i < starts[t].length; i++) {
+                ranges.add(new int[] { starts[t][i], ends[t][i], t, i });
+            }
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        DtsPieceTable result = new DtsPieceTable();
+        int next = 0;
+        for (int[] range : ranges) {
+            if (range[0] < next || range[1] < range[0] || range[1] >= lines.size()) {
+                throw new IOException("Bad line range " + range[0] + "-" + range[1]);
+            }
+            result.append(lines.subList(next, range[0]));
+            if (range[3] == 0) {
+                result.append(tables.get(range[2]));
+            }
+            next = range[1] + 1;
+        }
+        result.append(lines.subList(next, lines.size()));
+        return result;
+    }
+}
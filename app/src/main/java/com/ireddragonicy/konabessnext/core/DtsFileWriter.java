@@ -0,0 +1,130 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes DTS files so a crash can never leave a truncated one behind: the
+ * text is streamed into a temp file next to the target, synced to disk and
+ * then renamed over the target, which either fully happens or not at all.
+ * <p>
+ * A write whose content is the same as what was last written to the file,
+ * which is still untouched on disk, is skipped. That keeps the mtime too,
+ * so {@link DtsChangeTracker} does not see the file as edited.
+ */
+public class DtsFileWriter {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    // 64-bit FNV-1a over the UTF-16 chars, only used to spot identical rewrites
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static class Written {
+        final long modified;
+        final long length;
+        final long hash;
+
+        Written(long modified, long length, long hash) {
+            this.modified = modified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private static final Map<String, Written> written = new ConcurrentHashMap<>();
+
+    private DtsFileWriter() {
+    }
+
+    /**
+     * Forget what was written, e.g. after the DTS files were regenerated.
+     */
+    public static void clear() {
+        written.clear();
+    }
+
+    /**
+     * Write the lines, each followed by '\n'.
+     *
+     * @return false if the file already had this content and was left alone
+     */
+    public static boolean write(String path, List<String> lines) throws IOException {
+        long hash = FNV_OFFSET;
+        for (String line : lines) {
+            hash = hash(hash, line);
+            hash = hash(hash, '\n');
+        }
+        return write(path, hash, writer -> {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        });
+    }
+
+    /**
+     * Write text as is.
+     *
+     * @return false if the file already had this content and was left alone
+     */
+    public static boolean write(String path, CharSequence text) throws IOException {
+        return write(path, hash(FNV_OFFSET, text), writer -> writer.append(text));
+    }
+
+    private static synchronized boolean write(String path, long hash, Body body) throws IOException {
+        File target = new File(path);
+        Written last = written.get(path);
+        if (last != null && last.hash == hash && target.exists()
+                && target.lastModified() == last.modified && target.length() == last.length) {
+            return false;
+        }
+
+        File temp = new File(path + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            body.writeTo(writer);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        temp.setReadable(true, false);
+        temp.setWritable(true, false);
+
+        DtsDocument.invalidate(path);
+        GpuTableSnapshot.invalidate(path);
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            written.remove(path);
+            throw new IOException("Failed to replace " + target.getAbsolutePath());
+        }
+        written.put(path, new Written(target.lastModified(), target.length(), hash));
+        return true;
+    }
+
+    private static long hash(long hash, CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            hash = hash(hash, text.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, char c) {
+        hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+        return (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+}
@@ -0,0 +1,169 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The lines of a DTS kept as a sequence of immutable segments, usually views
+ * of a {@link DtsDocument}. Cutting tables out of the document, splicing a
+ * regenerated table back in and copying the whole thing for a snapshot only
+ * touch the segment list, never the lines themselves.
+ * <p>
+ * Segments must not be modified after they are handed in. {@link #set}
+ * replaces a single line by splitting its segment.
+ */
+public class DtsPieceTable extends AbstractList<String> {
+    private final ArrayList<List<String>> segments;
+    // starts[i] is the index of the first line of segments[i]
+    private int[] starts;
+    private int size;
+
+    public DtsPieceTable() {
+        this.segments = new ArrayList<>();
+        this.starts = new int[0];
+    }
+
+    private DtsPieceTable(DtsPieceTable other) {
+        this.segments = new ArrayList<>(other.segments);
+        this.starts = other.starts;
+        this.size = other.size;
+    }
+
+    /**
+     * Copy of any line list. Copying a piece table only copies its segment list.
+     */
+    public static DtsPieceTable copyOf(List<String> lines) {
+        if (lines instanceof DtsPieceTable) {
+            return new DtsPieceTable((DtsPieceTable) lines);
+        }
+        DtsPieceTable table = new DtsPieceTable();
+        if (lines != null) {
+            table.append(Collections.unmodifiableList(new ArrayList<>(lines)));
+        }
+        return table;
+    }
+
+    /**
+     * Append a segment without copying it.
+     */
+    public void append(List<String> segment) {
+        if (segment.isEmpty()) {
+            return;
+        }
+        segments.add(segment);
+        reindex();
+    }
+
+    /**
+     * @return a new table with the given lines inserted before {@code index}
+     */
+    public DtsPieceTable withInserted(int index, List<String> lines) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        DtsPieceTable result = new DtsPieceTable(this);
+        int at = result.split(index);
+        if (!lines.isEmpty()) {
+            result.segments.add(at, lines);
+        }
+        result.reindex();
+        return result;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int segment = segmentOf(index);
+        return segments.get(segment).get(index - starts[segment]);
+    }
+
+    @Override
+    public String set(int index, String line) {
+        String previous = get(index);
+        int at = split(index);
+        split(index + 1);
+        segments.set(at, Collections.singletonList(line));
+        reindex();
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int segment;
+            private Iterator<String> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && segment < segments.size()) {
+                    current = segments.get(segment++).iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Make {@code index} the first line of a segment.
+     *
+     * @return the position of that segment, or the segment count at the end
+     */
+    private int split(int index) {
+        if (index == size) {
+            return segments.size();
+        }
+        int segment = segmentOf(index);
+        int offset = index - starts[segment];
+        if (offset == 0) {
+            return segment;
+        }
+        List<String> lines = segments.get(segment);
+        segments.set(segment, lines.subList(0, offset));
+        segments.add(segment + 1, lines.subList(offset, lines.size()));
+        reindex();
+        return segment + 1;
+    }
+
+    private int segmentOf(int index) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void reindex() {
+        starts = new int[segments.size()];
+        int position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            starts[i] = position;
+            position += segments.get(i).size();
+        }
+        size = position;
+    }
+}
@@ -0,0 +1,307 @@
+package com.ireddragonicy.konabessnext.core;
+
+import com.ireddragonicy.konabessnext.model.Bin;
+import com.ireddragonicy.konabessnext.model.EditorState;
+import com.ireddragonicy.konabessnext.model.Level;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Editor state of a DTB the user switched away from, so coming back to it
+ * keeps the edits, undo/redo history and position.
+ */
+class EditorSession {
+    private static final int FORMAT_VERSION = 1;
+    // Rough JVM cost of a String beside its chars, and of a list entry
+    private static final int STRING_OVERHEAD = 40;
+    private static final int REFERENCE_SIZE = 8;
+
+    DtsPieceTable linesInDts;
+    ArrayList<Bin> binsSnapshot;
+    int binPosition;
+    Deque<EditorState> undoStates;
+    Deque<EditorState> redoStates;
+    ArrayList<String> history;
+    long editVersion;
+    long savedEditVersion;
+    boolean dirty;
+    Integer selectedBinIndex;
+    Integer selectedLevelIndex;
+
+    /**
+     * Estimate the heap the session keeps alive. Lines, bins and levels
+     * shared between its history entries are only counted once.
+     */
+    long estimateBytes() {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = linesBytes(linesInDts) + binsBytes(binsSnapshot, seen);
+        for (EditorState state : states()) {
+            if (!sameLines(state.linesInDts, linesInDts)) {
+                bytes += linesBytes(state.linesInDts);
+            }
+            bytes += binsBytes(state.binsSnapshot, seen);
+        }
+        if (history != null) {
+            bytes += linesBytes(history);
+        }
+        return bytes;
+    }
+
+    private List<EditorState> states() {
+        List<EditorState> states = new ArrayList<>(undoStates.size() + redoStates.size());
+        states.addAll(undoStates);
+        states.addAll(redoStates);
+        return states;
+    }
+
+    private static long binsBytes(List<Bin> bins, Set<Object> seen) {
+        long bytes = (long) bins.size() * REFERENCE_SIZE;
+        for (Bin bin : bins) {
+            if (!seen.add(bin)) {
+                continue;
+            }
+            if (seen.add(bin.header)) {
+                bytes += linesBytes(bin.header);
+            }
+            for (Level level : bin.levels) {
+                if (seen.add(level)) {
+                    bytes += linesBytes(level.lines);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long linesBytes(List<String> lines) {
+        long bytes = 0;
+        for (String line : lines) {
+            bytes += STRING_OVERHEAD + REFERENCE_SIZE + 2L * line.length();
+        }
+        return bytes;
+    }
+
+    private static boolean sameLines(List<String> a, List<String> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.size() != b.size()) {
+            return false;
+        }
+        Iterator<String> other = b.iterator();
+        for (String line : a) {
+            if (line != other.next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the session in a compact form. Identical DTS line lists, bins and
+     * levels shared between history entries are written once and referenced
+     * by index.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        List<List<String>> texts = new ArrayList<>();
+        Map<Level, Integer> levels = new IdentityHashMap<>();
+        Map<Bin, Integer> bins = new IdentityHashMap<>();
+        List<EditorState> states = new ArrayList<>();
+        states.add(currentState());
+        states.addAll(undoStates);
+        states.addAll(redoStates);
+
+        int[] textOf = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            textOf[i] = indexOfLines(texts, states.get(i).linesInDts);
+        }
+
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(texts.size());
+        for (List<String> text : texts) {
+            writeLines(out, text);
+        }
+
+        List<Level> levelTable = new ArrayList<>();
+        List<Bin> binTable = new ArrayList<>();
+        for (EditorState state : states) {
+            for (Bin bin : state.binsSnapshot) {
+                if (bins.containsKey(bin)) {
+                    continue;
+                }
+                bins.put(bin, binTable.size());
+                binTable.add(bin);
+                for (Level level : bin.levels) {
+                    if (!levels.containsKey(level)) {
+                        levels.put(level, levelTable.size());
+                        levelTable.add(level);
+                    }
+                }
+            }
+        }
+        out.writeInt(levelTable.size());
+        for (Level level : levelTable) {
+            writeLines(out, level.lines);
+        }
+        out.writeInt(binTable.size());
+        for (Bin bin : binTable) {
+            out.writeInt(bin.id);
+            writeLines(out, bin.header);
+            out.writeInt(bin.levels.size());
+            for (Level level : bin.levels) {
+                out.writeInt(levels.get(level));
+            }
+        }
+
+        out.writeInt(undoStates.size());
+        out.writeInt(redoStates.size());
+        for (int i = 0; i < states.size(); i++) {
+            EditorState state = states.get(i);
+            out.writeInt(textOf[i]);
+            out.writeInt(state.binPosition);
+            out.writeLong(state.editVersion);
+            out.writeInt(state.binsSnapshot.size());
+            for (Bin bin : state.binsSnapshot) {
+                out.writeInt(bins.get(bin));
+            }
+        }
+
+        writeLines(out, history != null ? history : Collections.emptyList());
+        out.writeLong(editVersion);
+        out.writeLong(savedEditVersion);
+        out.writeBoolean(dirty);
+        writeIndex(out, selectedBinIndex);
+        writeIndex(out, selectedLevelIndex);
+    }
+
+    static EditorSession readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown session format");
+        }
+        DtsPieceTable[] texts = new DtsPieceTable[in.readInt()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = new DtsPieceTable();
+            texts[i].append(Collections.unmodifiableList(readLines(in)));
+        }
+        Level[] levels = new Level[in.readInt()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Level();
+            levels[i].setLines(readLines(in));
+        }
+        Bin[] bins = new Bin[in.readInt()];
+        for (int i = 0; i < bins.length; i++) {
+            Bin bin = new Bin(in.readInt());
+            bin.header = readLines(in);
+            int count = in.readInt();
+            bin.levels = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                bin.levels.add(levels[in.readInt()]);
+            }
+            bins[i] = bin;
+        }
+
+        int undoCount = in.readInt();
+        int redoCount = in.readInt();
+        EditorState current = readState(in, texts, bins);
+        Deque<EditorState> undo = new ArrayDeque<>(undoCount);
+        for (int i = 0; i < undoCount; i++) {
+            undo.addLast(readState(in, texts, bins));
+        }
+        Deque<EditorState> redo = new ArrayDeque<>(redoCount);
+        for (int i = 0; i < redoCount; i++) {
+            redo.addLast(readState(in, texts, bins));
+        }
+
+        EditorSession session = new EditorSession();
+        session.linesInDts = (DtsPieceTable) current.linesInDts;
+        session.binsSnapshot = current.binsSnapshot;
+        session.binPosition = current.binPosition;
+        session.undoStates = undo;
+        session.redoStates = redo;
+        session.history = readLines(in);
+        session.editVersion = in.readLong();
+        session.savedEditVersion = in.readLong();
+        session.dirty = in.readBoolean();
+        session.selectedBinIndex = readIndex(in);
+        session.selectedLevelIndex = readIndex(in);
+        return session;
+    }
+
+    private EditorState currentState() {
+        EditorState state = new EditorState();
+        state.linesInDts = linesInDts;
+        state.binsSnapshot = binsSnapshot;
+        state.binPosition = binPosition;
+        state.editVersion = editVersion;
+        return state;
+    }
+
+    private static EditorState readState(DataInputStream in, DtsPieceTable[] texts, Bin[] bins) throws IOException {
+        EditorState state = new EditorState();
+        state.linesInDts = texts[in.readInt()];
+        state.binPosition = in.readInt();
+        state.editVersion = in.readLong();
+        int count = in.readInt();
+        state.binsSnapshot = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            state.binsSnapshot.add(bins[in.readInt()]);
+        }
+        return state;
+    }
+
+    private static int indexOfLines(List<List<String>> texts, List<String> lines) {
+        for (int i = 0; i < texts.size(); i++) {
+            if (sameLines(texts.get(i), lines)) {
+                return i;
+            }
+        }
+        texts.add(lines);
+        return texts.size() - 1;
+    }
+
+    private static void writeLines(DataOutputStream out, List<String> lines) throws IOException {
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static ArrayList<String> readLines(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String> lines = new ArrayList<>(count);
+        byte[] buffer = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            lines.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    private static void writeIndex(DataOutputStream out, Integer index) throws IOException {
+        out.writeBoolean(index != null);
+        if (index != null) {
+            out.writeInt(index);
+        }
+    }
+
+    private static Integer readIndex(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+}
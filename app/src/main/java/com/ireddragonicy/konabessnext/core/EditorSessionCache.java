@@ -0,0 +1,158 @@
+package com.ireddragonicy.konabessnext.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Editor sessions of the DTBs the user switched away from, least recently
+ * used first. Once the estimated size of the sessions kept in memory goes
+ * over the limit, the oldest ones are written to disk and dropped from
+ * memory; they are read back when the user returns to that DTB. The most
+ * recent session always stays in memory.
+ * <p>
+ * Spilled sessions only live as long as the process, the spill directory is
+ * emptied when the cache is created or cleared.
+ */
+class EditorSessionCache {
+    private static final String SPILL_SUFFIX = ".session";
+
+    private static class Entry {
+        EditorSession session;
+        long bytes;
+        File spilled;
+    }
+
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private File spillDir;
+    private long memoryBytes;
+
+    EditorSessionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void put(int dtbId, EditorSession session, File spillDir) {
+        if (this.spillDir == null || !this.spillDir.equals(spillDir)) {
+            this.spillDir = spillDir;
+            deleteSpillFiles();
+        }
+        remove(dtbId);
+        Entry entry = new Entry();
+        entry.session = session;
+        entry.bytes = session.estimateBytes();
+        entries.put(dtbId, entry);
+        memoryBytes += entry.bytes;
+        trim(dtbId);
+    }
+
+    /**
+     * @return the session of a DTB, read back from disk if it was spilled,
+     *         or null if there is none
+     */
+    synchronized EditorSession get(int dtbId) {
+        Entry entry = entries.get(dtbId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.session == null) {
+            try {
+                entry.session = read(entry.spilled);
+            } catch (IOException e) {
+                e.printStackTrace();
+                remove(dtbId);
+                return null;
+            }
+            entry.spilled.delete();
+            entry.spilled = null;
+            memoryBytes += entry.bytes;
+            trim(dtbId);
+        }
+        return entry.session;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        memoryBytes = 0;
+        deleteSpillFiles();
+    }
+
+    private void remove(int dtbId) {
+        Entry entry = entries.remove(dtbId);
+        if (entry == null) {
+            return;
+        }
+        if (entry.session != null) {
+            memoryBytes -= entry.bytes;
+        } else if (entry.spilled != null) {
+            entry.spilled.delete();
+        }
+    }
+
+    /**
+     * Spill the least recently used sessions until the rest fit, never the
+     * one that was just used.
+     */
+    private void trim(int keepId) {
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while (memoryBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Integer, Entry> next = it.next();
+            Entry entry = next.getValue();
+            if (next.getKey() == keepId || entry.session == null) {
+                continue;
+            }
+            File file = new File(spillDir, next.getKey() + SPILL_SUFFIX);
+            try {
+                write(entry.session, file);
+                entry.spilled = file;
+            } catch (IOException e) {
+                // Could not keep it anywhere, losing the session only loses its undo history
+                e.printStackTrace();
+                file.delete();
+                it.remove();
+            }
+            entry.session = null;
+            memoryBytes -= entry.bytes;
+        }
+    }
+
+    private static void write(EditorSession session, File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file), 64 * 1024), 64 * 1024))) {
+            session.writeTo(out);
+        }
+    }
+
+    private static EditorSession read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 64 * 1024), 64 * 1024))) {
+            return EditorSession.readFrom(in);
+        }
+    }
+
+    private void deleteSpillFiles() {
+        File[] files = spillDir != null ? spillDir.listFiles() : null;
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(SPILL_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+}
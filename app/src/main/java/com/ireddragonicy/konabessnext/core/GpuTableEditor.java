@@ -27,6 +27,7 @@ import com.google.android.material.color.MaterialColors;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import android.os.Looper;
+import android.os.PowerManager;
 
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -36,21 +37,15 @@ import com.ireddragonicy.konabessnext.R;
 import com.ireddragonicy.konabessnext.ui.MainActivity;
 import com.ireddragonicy.konabessnext.ui.SettingsActivity;
 import com.ireddragonicy.konabessnext.data.KonaBessStr;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
 
 import com.ireddragonicy.konabessnext.ui.adapters.ChipsetSelectorAdapter;
@@ -77,13 +72,21 @@ public class GpuTableEditor {
     // Using model.Bin and model.Level for MVVM architecture
     public static ArrayList<Bin> bins;
 
-    private static ArrayList<String> lines_in_dts;
+    private static DtsPieceTable lines_in_dts;
+    private static DtsDocument document;
+    // Line ranges of the bin nodes in document, from the last decode
+    private static int[] node_starts;
+    private static int[] node_ends;
 
     private static final int MAX_HISTORY_SIZE = 50;
     public static final Deque<EditorState> undoStack = new ArrayDeque<>();
     public static final Deque<EditorState> redoStack = new ArrayDeque<>();
     private static final ArrayList<String> changeHistory = new ArrayList<>();
-    private static final Map<Integer, EditorSession> sessionCache = new HashMap<>();
+    // Sessions of the DTBs the user switched away from
+    private static final long SESSION_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+    private static final EditorSessionCache sessionCache = new EditorSessionCache(SESSION_CACHE_MAX_BYTES);
+    // Upper bound for the wake lock of a background flush, a write takes well under a second
+    private static final long FLUSH_WAKE_LOCK_TIMEOUT_MS = 10_000;
 
     private static Activity currentActivity;
     private static LinearLayout currentPage;
@@ -119,7 +122,12 @@ public class GpuTableEditor {
     private static MaterialButton historyButtonRef;
 
     private static boolean isDirty = false;
-    private static String lastSavedSignature;
+    // Every change gets a new edit version, undo and redo bring back the
+    // version of the state they restore. The table is unsaved whenever the
+    // current version is not the one that was last written out.
+    private static long editVersionCounter;
+    private static long editVersion;
+    private static volatile long savedEditVersion = -1;
 
     // MVVM ViewModel reference - bridge for gradual migration
     private static GpuFrequencyViewModel viewModelRef;
@@ -139,19 +147,6 @@ public class GpuTableEditor {
         return viewModelRef;
     }
 
-    private static class EditorSession {
-        ArrayList<String> linesInDts;
-        ArrayList<Bin> binsSnapshot;
-        int binPosition;
-        Deque<EditorState> undoStates;
-        Deque<EditorState> redoStates;
-        ArrayList<String> history;
-        String savedSignature;
-        boolean dirty;
-        Integer selectedBinIndex;
-        Integer selectedLevelIndex;
-    }
-
     private static boolean isOnMainThread() {
         return Looper.myLooper() == Looper.getMainLooper();
     }
@@ -173,131 +168,75 @@ public class GpuTableEditor {
     // EditorState is now in com.ireddragonicy.konabessnext.model.EditorState
 
     public static void init() throws IOException {
-        lines_in_dts = new ArrayList<>();
+        DtsAutoSaver.flush();
+        document = DtsDocument.load(KonaBessCore.dts_path);
+        lines_in_dts = new DtsPieceTable();
         bins = new ArrayList<>();
         bin_position = -1;
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(new File(KonaBessCore.dts_path)));
-        String s;
-        while ((s = bufferedReader.readLine()) != null) {
-            lines_in_dts.add(s);
-        }
+        node_starts = new int[0];
+        node_ends = new int[0];
     }
 
-    public static void decode() throws Exception {
-        int i = -1;
-        String this_line;
-        int start = -1;
-        int end;
-        int bracket = 0;
-        while (++i < lines_in_dts.size()) {
-            this_line = lines_in_dts.get(i).trim();
-
-            if ((ChipInfo.which == ChipInfo.type.kona_singleBin
-                    || ChipInfo.which == ChipInfo.type.msmnile_singleBin
-                    || ChipInfo.which == ChipInfo.type.lahaina_singleBin
-                    || ChipInfo.which == ChipInfo.type.waipio_singleBin
-                    || ChipInfo.which == ChipInfo.type.cape_singleBin
-                    || ChipInfo.which == ChipInfo.type.ukee_singleBin
-                    || ChipInfo.which == ChipInfo.type.cliffs_singleBin
-                    || ChipInfo.which == ChipInfo.type.cliffs_7_singleBin
-                    || ChipInfo.which == ChipInfo.type.kalama_sg_singleBin)
-                    && this_line.equals("qcom,gpu-pwrlevels {")) {
-                start = i;
-                if (bin_position < 0)
-                    bin_position = i;
-                bracket++;
-                continue;
-            }
-            if (ChipInfo.which == ChipInfo.type.tuna
-                    && this_line.contains("qcom,gpu-pwrlevels-")
-                    && !this_line.contains("compatible = ")
-                    && !this_line.contains("qcom,gpu-pwrlevel-bins")) {
-                start = i;
-                if (bin_position < 0)
-                    bin_position = i;
-                if (bracket != 0)
-                    throw new Exception();
-                bracket++;
-                continue;
-            }
-            if ((ChipInfo.which == ChipInfo.type.kona
-                    || ChipInfo.which == ChipInfo.type.msmnile
-                    || ChipInfo.which == ChipInfo.type.lahaina
-                    || ChipInfo.which == ChipInfo.type.lito_v1 || ChipInfo.which == ChipInfo.type.lito_v2
-                    || ChipInfo.which == ChipInfo.type.lagoon
-                    || ChipInfo.which == ChipInfo.type.shima
-                    || ChipInfo.which == ChipInfo.type.yupik
-                    || ChipInfo.which == ChipInfo.type.kalama
-                    || ChipInfo.which == ChipInfo.type.diwali
-                    || ChipInfo.which == ChipInfo.type.pineapple
-                    || ChipInfo.which == ChipInfo.type.sun
-                    || ChipInfo.which == ChipInfo.type.canoe)
-                    && this_line.contains("qcom,gpu-pwrlevels-")
-                    && !this_line.contains("compatible = ")) {
-                start = i;
-                if (bin_position < 0)
-                    bin_position = i;
-                if (bracket != 0)
-                    throw new Exception();
-                bracket++;
-                continue;
-            }
+    private static boolean isSingleBinChip() {
+        return ChipInfo.which == ChipInfo.type.kona_singleBin
+                || ChipInfo.which == ChipInfo.type.msmnile_singleBin
+                || ChipInfo.which == ChipInfo.type.lahaina_singleBin
+                || ChipInfo.which == ChipInfo.type.waipio_singleBin
+                || ChipInfo.which == ChipInfo.type.cape_singleBin
+                || ChipInfo.which == ChipInfo.type.ukee_singleBin
+                || ChipInfo.which == ChipInfo.type.cliffs_singleBin
+                || ChipInfo.which == ChipInfo.type.cliffs_7_singleBin
+                || ChipInfo.which == ChipInfo.type.kalama_sg_singleBin;
+    }
 
-            if (this_line.contains("{") && start >= 0)
-                bracket++;
-            if (this_line.contains("}") && start >= 0)
-                bracket--;
+    private static boolean isMultiBinChip() {
+        return ChipInfo.which == ChipInfo.type.kona
+                || ChipInfo.which == ChipInfo.type.msmnile
+                || ChipInfo.which == ChipInfo.type.lahaina
+                || ChipInfo.which == ChipInfo.type.lito_v1 || ChipInfo.which == ChipInfo.type.lito_v2
+                || ChipInfo.which == ChipInfo.type.lagoon
+                || ChipInfo.which == ChipInfo.type.shima
+                || ChipInfo.which == ChipInfo.type.yupik
+                || ChipInfo.which == ChipInfo.type.kalama
+                || ChipInfo.which == ChipInfo.type.diwali
+                || ChipInfo.which == ChipInfo.type.pineapple
+                || ChipInfo.which == ChipInfo.type.sun
+                || ChipInfo.which == ChipInfo.type.canoe
+                || ChipInfo.which == ChipInfo.type.tuna;
+    }
 
-            if (bracket == 0 && start >= 0
-                    && (ChipInfo.which == ChipInfo.type.kona
-                            || ChipInfo.which == ChipInfo.type.msmnile
-                            || ChipInfo.which == ChipInfo.type.lahaina
-                            || ChipInfo.which == ChipInfo.type.lito_v1 || ChipInfo.which == ChipInfo.type.lito_v2
-                            || ChipInfo.which == ChipInfo.type.lagoon
-                            || ChipInfo.which == ChipInfo.type.shima
-                            || ChipInfo.which == ChipInfo.type.yupik
-                            || ChipInfo.which == ChipInfo.type.kalama
-                            || ChipInfo.which == ChipInfo.type.diwali
-                            || ChipInfo.which == ChipInfo.type.pineapple
-                            || ChipInfo.which == ChipInfo.type.sun
-                            || ChipInfo.which == ChipInfo.type.canoe
-                            || ChipInfo.which == ChipInfo.type.tuna)) {
-                end = i;
-                if (end >= start) {
-                    try {
-                        decode_bin(lines_in_dts.subList(start, end + 1));
-                        int removedLines = end - start + 1;
-                        lines_in_dts.subList(start, end + 1).clear();
-                        i = i - removedLines; // Adjust index after removing lines
-                    } catch (Exception e) {
-                        throw e;
-                    }
-                } else {
-                    throw new Exception();
-                }
-                start = -1;
-                continue;
-            }
+    private static boolean isBinNode(DtsDocument.Node node) {
+        if (isSingleBinChip())
+            return node.getLabel() == null && node.getName().equals("qcom,gpu-pwrlevels");
+        return isMultiBinChip() && node.getName().startsWith("qcom,gpu-pwrlevels-");
+    }
 
-            if (bracket == 0 && start >= 0 && (ChipInfo.which == ChipInfo.type.kona_singleBin
-                    || ChipInfo.which == ChipInfo.type.msmnile_singleBin
-                    || ChipInfo.which == ChipInfo.type.lahaina_singleBin
-                    || ChipInfo.which == ChipInfo.type.waipio_singleBin
-                    || ChipInfo.which == ChipInfo.type.cape_singleBin
-                    || ChipInfo.which == ChipInfo.type.ukee_singleBin
-                    || ChipInfo.which == ChipInfo.type.cliffs_singleBin
-                    || ChipInfo.which == ChipInfo.type.cliffs_7_singleBin
-                    || ChipInfo.which == ChipInfo.type.kalama_sg_singleBin)) {
-                end = i;
-                if (end >= start) {
-                    decode_bin(lines_in_dts.subList(start, end + 1));
-                    lines_in_dts.subList(start, end + 1).clear();
-                } else {
-                    throw new Exception();
-                }
-                break;
-            }
+    public static void decode() throws Exception {
+        String chip = ChipInfo.which.name();
+        GpuTableSnapshot snapshot = GpuTableSnapshot.load(KonaBessCore.dts_path, document, chip);
+        if (snapshot != null) {
+            bins = snapshot.getBins();
+            bin_position = snapshot.getBinPosition();
+            node_starts = snapshot.getNodeStarts();
+            node_ends = snapshot.getNodeEnds();
+            lines_in_dts = document.linesWithout(node_starts, node_ends);
+            return;
         }
+        List<DtsDocument.Node> binNodes = document.findAll(GpuTableEditor::isBinNode);
+        if (isSingleBinChip() && binNodes.size() > 1)
+            binNodes = binNodes.subList(0, 1);
+        node_starts = new int[binNodes.size()];
+        node_ends = new int[binNodes.size()];
+        for (int i = 0; i < binNodes.size(); i++) {
+            DtsDocument.Node node = binNodes.get(i);
+            if (bin_position < 0)
+                bin_position = node.getStartLine();
+            node_starts[i] = node.getStartLine();
+            node_ends[i] = node.getEndLine();
+            decode_bin(document.getLines(node));
+        }
+        lines_in_dts = document.linesWithout(node_starts, node_ends);
+        GpuTableSnapshot.save(KonaBessCore.dts_path, document, chip, binNodes, bin_position, bins);
     }
 
     private static int getBinID(String line, int prev_id) {
@@ -356,7 +295,6 @@ public class GpuTableEditor {
 
     private static Level decode_level(List<String> lines) {
         Level lvl = new Level();
-        lvl.lines = new ArrayList<>();
 
         for (String line : lines) {
             line = line.trim();
@@ -364,13 +302,20 @@ public class GpuTableEditor {
                 continue;
             if (line.contains("reg"))
                 continue;
-            lvl.lines.add(line);
+            lvl.addLine(line);
         }
 
         return lvl;
     }
 
     public static List<String> genTable() {
+        return genTable(bins);
+    }
+
+    /**
+     * The table text for the given bins instead of the decoded ones.
+     */
+    static List<String> genTable(List<Bin> bins) {
         ArrayList<String> lines = new ArrayList<>();
         if (ChipInfo.which == ChipInfo.type.kona
                 || ChipInfo.which == ChipInfo.type.msmnile
@@ -419,119 +364,45 @@ public class GpuTableEditor {
     }
 
     public static List<String> genBack(List<String> table) {
-        ArrayList<String> new_dts = new ArrayList<>(lines_in_dts);
-        new_dts.addAll(bin_position, table);
-        return new_dts;
+        return lines_in_dts.withInserted(bin_position, table);
     }
 
-    public static void writeOut(List<String> new_dts) throws IOException {
-        File file = new File(KonaBessCore.dts_path);
-
-        // If file exists, delete it first to avoid permission issues
-        if (file.exists()) {
-            if (!file.delete()) {
-                // If can't delete, try to set writable first
-                file.setWritable(true);
-                if (!file.delete()) {
-                    throw new IOException("Cannot delete existing file: " + file.getAbsolutePath());
-                }
-            }
-        }
-
-        // Create new file
-        if (!file.createNewFile()) {
-            throw new IOException("Failed to create file: " + file.getAbsolutePath());
-        }
+    /**
+     * The document the table was last decoded from.
+     */
+    static DtsDocument getDocument() {
+        return document;
+    }
 
-        // Set proper permissions
-        file.setReadable(true, false);
-        file.setWritable(true, false);
+    /**
+     * @return the line ranges of the bin nodes in {@link #getDocument()}, as
+     *         {starts, ends}
+     */
+    static int[][] getTableRanges() {
+        return new int[][] { node_starts, node_ends };
+    }
 
-        BufferedWriter bufferedWriter = null;
-        try {
-            bufferedWriter = new BufferedWriter(new FileWriter(file));
-            for (String s : new_dts) {
-                bufferedWriter.write(s);
-                bufferedWriter.newLine();
-            }
-        } finally {
-            if (bufferedWriter != null) {
-                try {
-                    bufferedWriter.close();
-                } catch (IOException e) {
-                    // Ignore close errors
-                }
-            }
-        }
+    public static void writeOut(List<String> new_dts) throws IOException {
+        DtsAutoSaver.writeNow(KonaBessCore.dts_path, new_dts);
     }
 
     public static EditorState captureState() {
         EditorState state = new EditorState();
-        state.linesInDts = new ArrayList<>(lines_in_dts);
-        state.binsSnapshot = cloneBinsList(bins);
+        state.linesInDts = DtsPieceTable.copyOf(lines_in_dts);
+        state.binsSnapshot = EditorState.snapshotBins(bins);
         state.binPosition = bin_position;
+        state.editVersion = editVersion;
         return state;
     }
 
-    private static ArrayList<Bin> cloneBinsList(List<Bin> source) {
-        ArrayList<Bin> clone = new ArrayList<>();
-        if (source == null) {
-            return clone;
-        }
-        for (Bin original : source) {
-            clone.add(cloneBin(original));
-        }
-        return clone;
-    }
-
-    private static Bin cloneBin(Bin original) {
-        Bin copy = new Bin();
-        copy.id = original.id;
-        copy.header = new ArrayList<>(original.header);
-        copy.levels = new ArrayList<>();
-        for (Level lvl : original.levels) {
-            copy.levels.add(cloneLevel(lvl));
-        }
-        return copy;
-    }
-
-    private static Level cloneLevel(Level original) {
-        Level copy = new Level();
-        copy.lines = new ArrayList<>(original.lines);
-        return copy;
-    }
-
     private static void restoreState(EditorState state) {
         if (state == null) {
             return;
         }
-        lines_in_dts = new ArrayList<>(state.linesInDts);
-        bins = cloneBinsList(state.binsSnapshot);
+        lines_in_dts = DtsPieceTable.copyOf(state.linesInDts);
+        bins = EditorState.restoreBins(state.binsSnapshot);
         bin_position = state.binPosition;
-    }
-
-    private static EditorState cloneEditorState(EditorState original) {
-        if (original == null) {
-            return null;
-        }
-        EditorState copy = new EditorState();
-        copy.linesInDts = original.linesInDts != null
-                ? new ArrayList<>(original.linesInDts)
-                : new ArrayList<>();
-        copy.binsSnapshot = cloneBinsList(original.binsSnapshot);
-        copy.binPosition = original.binPosition;
-        return copy;
-    }
-
-    private static Deque<EditorState> cloneEditorStateDeque(Deque<EditorState> source) {
-        ArrayDeque<EditorState> clone = new ArrayDeque<>();
-        if (source == null) {
-            return clone;
-        }
-        for (EditorState state : source) {
-            clone.addLast(cloneEditorState(state));
-        }
-        return clone;
+        editVersion = state.editVersion;
     }
 
     private static void saveCurrentSession() {
@@ -540,45 +411,44 @@ public class GpuTableEditor {
             return;
         }
         EditorSession session = new EditorSession();
-        session.linesInDts = new ArrayList<>(lines_in_dts);
-        session.binsSnapshot = cloneBinsList(bins);
+        session.linesInDts = DtsPieceTable.copyOf(lines_in_dts);
+        session.binsSnapshot = EditorState.snapshotBins(bins);
         session.binPosition = bin_position;
-        session.undoStates = cloneEditorStateDeque(undoStack);
-        session.redoStates = cloneEditorStateDeque(redoStack);
+        // History entries are never modified, sessions can share them
+        session.undoStates = new ArrayDeque<>(undoStack);
+        session.redoStates = new ArrayDeque<>(redoStack);
         session.history = new ArrayList<>(changeHistory);
-        session.savedSignature = lastSavedSignature;
+        session.editVersion = editVersion;
+        session.savedEditVersion = savedEditVersion;
         session.dirty = isDirty;
         session.selectedBinIndex = currentBinIndex;
         session.selectedLevelIndex = currentLevelIndex;
-        synchronized (sessionCache) {
-            sessionCache.put(current.id, session);
-        }
+        sessionCache.put(current.id, session,
+                new File(new File(KonaBessCore.dts_path).getParentFile(), "sessions"));
     }
 
     private static boolean restoreSession(int dtbId) {
-        EditorSession session;
-        synchronized (sessionCache) {
-            session = sessionCache.get(dtbId);
-        }
+        EditorSession session = sessionCache.get(dtbId);
         if (session == null) {
             return false;
         }
-        lines_in_dts = session.linesInDts != null ? new ArrayList<>(session.linesInDts) : new ArrayList<>();
-        bins = cloneBinsList(session.binsSnapshot);
+        lines_in_dts = DtsPieceTable.copyOf(session.linesInDts);
+        bins = EditorState.restoreBins(session.binsSnapshot);
         bin_position = session.binPosition;
 
         undoStack.clear();
-        undoStack.addAll(cloneEditorStateDeque(session.undoStates));
+        undoStack.addAll(session.undoStates);
 
         redoStack.clear();
-        redoStack.addAll(cloneEditorStateDeque(session.redoStates));
+        redoStack.addAll(session.redoStates);
 
         changeHistory.clear();
         if (session.history != null) {
             changeHistory.addAll(session.history);
         }
 
-        lastSavedSignature = session.savedSignature;
+        editVersion = session.editVersion;
+        savedEditVersion = session.savedEditVersion;
         isDirty = session.dirty;
         currentBinIndex = session.selectedBinIndex;
         currentLevelIndex = session.selectedLevelIndex;
@@ -701,6 +571,7 @@ public class GpuTableEditor {
 
     public static void applyChange(String description, EditorChange change) throws Exception {
         EditorState snapshot = captureState();
+        editVersion = ++editVersionCounter;
         change.run();
         pushUndoState(snapshot);
         completeChange(description);
@@ -721,11 +592,70 @@ public class GpuTableEditor {
             updateSaveButtonAppearance();
             return;
         }
-        boolean success = saveFrequencyTable(currentActivity, false,
-                currentActivity.getString(R.string.history_auto_saved));
-        if (!success) {
-            setDirty(true);
+        List<String> dts;
+        try {
+            dts = genBack(genTable());
+        } catch (Exception e) {
+            DialogUtil.showError(currentActivity, R.string.save_failed);
+            return;
         }
+        DtsAutoSaver.schedule(KonaBessCore.dts_path, dts, editVersion,
+                DtsAutoSaver.DELAY_MS, autoSaveCallback);
+        updateSaveButtonAppearance();
+    }
+
+    private static final DtsAutoSaver.Callback autoSaveCallback = new DtsAutoSaver.Callback() {
+        @Override
+        public void onSaved(String path, long version) {
+            if (!path.equals(KonaBessCore.dts_path)) {
+                return;
+            }
+            savedEditVersion = version;
+            runOnMainThread(() -> {
+                refreshDirtyState();
+                if (currentActivity != null) {
+                    addHistoryEntry(currentActivity.getString(R.string.history_auto_saved));
+                }
+            });
+        }
+
+        @Override
+        public void onFailed(String path, long version, IOException e) {
+            runOnMainThread(() -> {
+                setDirty(true);
+                if (currentActivity != null) {
+                    DialogUtil.showError(currentActivity, R.string.save_failed);
+                }
+            });
+        }
+    };
+
+    /**
+     * Write any pending auto-save now. Call before leaving the editor or
+     * reading the DTS file from elsewhere.
+     */
+    public static boolean flushPendingSave() {
+        return DtsAutoSaver.flush();
+    }
+
+    /**
+     * Start writing any pending auto-save without blocking the caller, e.g.
+     * when the app goes to the background. A partial wake lock keeps the
+     * device awake until the write is done.
+     */
+    public static void flushPendingSaveInBackground(Context context) {
+        if (!DtsAutoSaver.hasPending()) {
+            return;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
+                PowerManager.PARTIAL_WAKE_LOCK, "KonaBess:autosave");
+        wakeLock.acquire(FLUSH_WAKE_LOCK_TIMEOUT_MS);
+        DtsAutoSaver.flushInBackground(() -> {
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+        });
     }
 
     public static boolean saveFrequencyTable(Context context, boolean showToast, String historyMessage) {
@@ -748,38 +678,21 @@ public class GpuTableEditor {
     }
 
     private static void markStateSaved() {
-        lastSavedSignature = computeStateSignature();
+        savedEditVersion = editVersion;
         setDirty(false);
         updateUndoRedoButtons();
     }
 
-    private static String computeStateSignature() {
-        try {
-            List<String> snapshot = genBack(genTable());
-            StringBuilder builder = new StringBuilder();
-            for (String line : snapshot) {
-                builder.append(line).append('\n');
-            }
-            return builder.toString();
-        } catch (Exception e) {
-            return Integer.toString(bins.hashCode());
-        }
-    }
-
-    private static void refreshDirtyStateFromSignature() {
-        if (lastSavedSignature == null) {
-            setDirty(true);
-            return;
-        }
-        boolean dirty = !lastSavedSignature.equals(computeStateSignature());
-        setDirty(dirty);
+    private static void refreshDirtyState() {
+        setDirty(editVersion != savedEditVersion);
     }
 
     private static void resetEditorState() {
         undoStack.clear();
         redoStack.clear();
         changeHistory.clear();
-        lastSavedSignature = computeStateSignature();
+        editVersion = ++editVersionCounter;
+        savedEditVersion = editVersion;
         isDirty = false;
         runOnMainThread(() -> {
             updateSaveButtonAppearance();
@@ -817,7 +730,7 @@ public class GpuTableEditor {
         }
         restoreState(previous);
         refreshCurrentView();
-        refreshDirtyStateFromSignature();
+        refreshDirtyState();
         updateUndoRedoButtons();
         if (currentActivity != null) {
             addHistoryEntry(currentActivity.getString(R.string.history_undo_action));
@@ -836,7 +749,7 @@ public class GpuTableEditor {
         }
         restoreState(nextState);
         refreshCurrentView();
-        refreshDirtyStateFromSignature();
+        refreshDirtyState();
         updateUndoRedoButtons();
         if (currentActivity != null) {
             addHistoryEntry(currentActivity.getString(R.string.history_redo_action));
@@ -1429,9 +1342,7 @@ public class GpuTableEditor {
     }
 
     private static Level level_clone(Level from) {
-        Level next = new Level();
-        next.lines = new ArrayList<>(from.lines);
-        return next;
+        return new Level(from);
     }
 
     private static void offset_initial_level_old(int offset) throws Exception {
@@ -1626,24 +1537,21 @@ public class GpuTableEditor {
 
             // Extract spec details from DTS lines
             try {
-                for (String line : lvl.lines) {
-                    String paramName = DtsHelper.decode_hex_line(line).name;
-
-                    if ("qcom,bus-max".equals(paramName)) {
-                        long busMax = DtsHelper.decode_int_line(line).value;
-                        item.busMax = String.valueOf(busMax);
-                    } else if ("qcom,bus-min".equals(paramName)) {
-                        long busMin = DtsHelper.decode_int_line(line).value;
-                        item.busMin = String.valueOf(busMin);
-                    } else if ("qcom,bus-freq".equals(paramName)) {
-                        long busFreq = DtsHelper.decode_int_line(line).value;
-                        // Bus-freq is a level/index, not frequency in MHz
-                        item.busFreq = String.valueOf(busFreq);
-                    } else if ("qcom,level".equals(paramName) || "qcom,cx-level".equals(paramName)) {
-                        long voltLevel = DtsHelper.decode_int_line(line).value;
-                        item.voltageLevel = GpuVoltEditor.levelint2str(voltLevel);
-                    }
-                }
+                long busMax = getLevelValue(lvl, Level.Property.BUS_MAX);
+                if (busMax >= 0)
+                    item.busMax = String.valueOf(busMax);
+                long busMin = getLevelValue(lvl, Level.Property.BUS_MIN);
+                if (busMin >= 0)
+                    item.busMin = String.valueOf(busMin);
+                // Bus-freq is a level/index, not frequency in MHz
+                long busFreq = getLevelValue(lvl, Level.Property.BUS_FREQ);
+                if (busFreq >= 0)
+                    item.busFreq = String.valueOf(busFreq);
+                long voltLevel = getLevelValue(lvl, Level.Property.LEVEL);
+                if (voltLevel < 0)
+                    voltLevel = getLevelValue(lvl, Level.Property.CX_LEVEL);
+                if (voltLevel >= 0)
+                    item.voltageLevel = GpuVoltEditor.levelint2str(voltLevel);
             } catch (Exception e) {
                 // Ignore parsing errors for individual specs
             }
@@ -1884,6 +1792,9 @@ public class GpuTableEditor {
     }
 
     private static long getFrequencyFromLevel(Level lvl) throws Exception {
+        if (lvl.has(Level.Property.GPU_FREQ))
+            return lvl.getFrequency();
+        // Written in a form the typed level does not keep, e.g. upper case hex
         for (String line : lvl.lines) {
             if (line.contains("qcom,gpu-freq")) {
                 return DtsHelper.decode_int_line(line).value;
@@ -1892,6 +1803,23 @@ public class GpuTableEditor {
         throw new Exception();
     }
 
+    /**
+     * @return the value of a property, also when its line is kept as is
+     *         (e.g. upper case hex), or -1 if the level does not have it
+     */
+    private static long getLevelValue(Level lvl, Level.Property property) throws Exception {
+        if (lvl.has(property))
+            return lvl.getValue(property);
+        for (int i = 0; i < lvl.getLineCount(); i++) {
+            if (lvl.getProperty(i) != null)
+                continue;
+            String line = lvl.lines.get(i).trim();
+            if (line.startsWith(property.key) && line.substring(property.key.length()).trim().startsWith("="))
+                return DtsHelper.decode_int_line(line).value;
+        }
+        return -1;
+    }
+
     private static View createChipsetSelectorCard(Activity activity, LinearLayout page) {
         float density = activity.getResources().getDisplayMetrics().density;
         int padding = (int) (density * 16);
@@ -2048,6 +1976,7 @@ public class GpuTableEditor {
             try {
                 KonaBessCore.Dtb previous = KonaBessCore.getCurrentDtb();
                 if (previous != null && previous.id != newDtb.id) {
+                    DtsAutoSaver.flush();
                     saveCurrentSession();
                 }
 
@@ -2076,7 +2005,7 @@ public class GpuTableEditor {
 
                     // Regenerate bins view
                     try {
-                        refreshDirtyStateFromSignature();
+                        refreshDirtyState();
                         generateBins(activity, page);
                         if (restoredSession && targetBinIndex != null) {
                             try {
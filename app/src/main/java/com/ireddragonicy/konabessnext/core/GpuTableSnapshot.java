@@ -0,0 +1,194 @@
+package com.ireddragonicy.konabessnext.core;
+
+import com.ireddragonicy.konabessnext.model.Bin;
+import com.ireddragonicy.konabessnext.model.Level;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decoded GPU frequency table of a DTS, stored next to it as
+ * N.dts.table. It holds the bins, the insert position and the line ranges
+ * of the bin nodes, so a later launch can take the table straight from it
+ * without building the node tree or decoding the levels again.
+ * <p>
+ * A snapshot is only used while the DTS has the same mtime, length and line
+ * count and the chip type is the same as when it was written; anything
+ * else, including a damaged file, counts as a miss. That is checked against
+ * the file stats the document was read with, so a hit never hashes the text.
+ * Writes through {@link DtsFileWriter} delete the snapshot, so an edit that
+ * keeps the length and lands in the same mtime tick cannot leave a stale one.
+ */
+public class GpuTableSnapshot {
+    private static final int MAGIC = 0x4B425442; // "KBTB"
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".table";
+
+    private final int[] nodeStarts;
+    private final int[] nodeEnds;
+    private final int binPosition;
+    private final ArrayList<Bin> bins;
+
+    private GpuTableSnapshot(int[] nodeStarts, int[] nodeEnds, int binPosition, ArrayList<Bin> bins) {
+        this.nodeStarts = nodeStarts;
+        this.nodeEnds = nodeEnds;
+        this.binPosition = binPosition;
+        this.bins = bins;
+    }
+
+    /**
+     * @return the snapshot for this document and chip, or null if there is
+     *         no valid one
+     */
+    public static GpuTableSnapshot load(String dtsPath, DtsDocument document, String chip) {
+        File file = new File(dtsPath + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readLong() != document.getModified()
+                    || in.readLong() != document.getLength()
+                    || in.readInt() != document.getLines().size()
+                    || !in.readUTF().equals(chip)) {
+                return null;
+            }
+            int nodeCount = in.readInt();
+            int[] starts = new int[nodeCount];
+            int[] ends = new int[nodeCount];
+            int next = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                starts[i] = in.readInt();
+                ends[i] = in.readInt();
+                if (starts[i] < next || ends[i] < starts[i] || ends[i] >= document.getLines().size()) {
+                    return null;
+                }
+                next = ends[i] + 1;
+            }
+            int binPosition = in.readInt();
+
+            int binCount = in.readInt();
+            ArrayList<Bin> bins = new ArrayList<>(binCount);
+            for (int i = 0; i < binCount; i++) {
+                Bin bin = new Bin(in.readInt());
+                int headerCount = in.readInt();
+                for (int j = 0; j < headerCount; j++) {
+                    bin.header.add(readLine(in));
+                }
+                int levelCount = in.readInt();
+                for (int j = 0; j < levelCount; j++) {
+                    Level level = new Level();
+                    int lineCount = in.readInt();
+                    for (int k = 0; k < lineCount; k++) {
+                        level.addLine(readLine(in));
+                    }
+                    bin.levels.add(level);
+                }
+                bins.add(bin);
+            }
+            return new GpuTableSnapshot(starts, ends, binPosition, bins);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Store the table just decoded from a document. Failing to write only
+     * means the next launch decodes again.
+     *
+     * @param nodes the bin nodes the table was decoded from, in file order
+     */
+    public static synchronized void save(String dtsPath, DtsDocument document, String chip,
+            List<DtsDocument.Node> nodes, int binPosition, List<Bin> bins) {
+        File file = new File(dtsPath + SUFFIX);
+        File temp = new File(dtsPath + SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(document.getModified());
+            out.writeLong(document.getLength());
+            out.writeInt(document.getLines().size());
+            out.writeUTF(chip);
+            out.writeInt(nodes.size());
+            for (DtsDocument.Node node : nodes) {
+                out.writeInt(node.getStartLine());
+                out.writeInt(node.getEndLine());
+            }
+            out.writeInt(binPosition);
+
+            out.writeInt(bins.size());
+            for (Bin bin : bins) {
+                out.writeInt(bin.id);
+                out.writeInt(bin.header.size());
+                for (String line : bin.header) {
+                    writeLine(out, line);
+                }
+                out.writeInt(bin.levels.size());
+                for (Level level : bin.levels) {
+                    out.writeInt(level.getLineCount());
+                    for (String line : level.lines) {
+                        writeLine(out, line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Drop the snapshot of a DTS that was rewritten or regenerated.
+     */
+    public static synchronized void invalidate(String dtsPath) {
+        new File(dtsPath + SUFFIX).delete();
+    }
+
+    /**
+     * Line ranges of the bin nodes, to cut them out of the document.
+     */
+    public int[] getNodeStarts() {
+        return nodeStarts;
+    }
+
+    public int[] getNodeEnds() {
+        return nodeEnds;
+    }
+
+    public int getBinPosition() {
+        return binPosition;
+    }
+
+    /**
+     * @return newly created bins, owned by the caller
+     */
+    public ArrayList<Bin> getBins() {
+        return bins;
+    }
+
+    private static void writeLine(DataOutputStream out, String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
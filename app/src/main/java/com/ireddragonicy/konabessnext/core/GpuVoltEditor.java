@@ -18,11 +18,6 @@ import android.widget.Toast;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -50,17 +45,14 @@ public class GpuVoltEditor {
     }
 
     private static ArrayList<opp> opps;
-    private static ArrayList<String> lines_in_dts;
+    private static DtsPieceTable lines_in_dts;
+    private static DtsDocument document;
     private static int opp_position;
+    // Opp nodes in document, from the last decode
+    private static List<DtsDocument.Node> opp_nodes;
 
     public static void init() throws IOException {
         // Clear all static data to avoid conflicts when switching chipsets
-        if (lines_in_dts != null) {
-            lines_in_dts.clear();
-        } else {
-            lines_in_dts = new ArrayList<>();
-        }
-
         if (opps != null) {
             opps.clear();
         } else {
@@ -68,23 +60,10 @@ public class GpuVoltEditor {
         }
 
         opp_position = -1;
-
-        BufferedReader bufferedReader = null;
-        try {
-            bufferedReader = new BufferedReader(new FileReader(new File(KonaBessCore.dts_path)));
-            String s;
-            while ((s = bufferedReader.readLine()) != null) {
-                lines_in_dts.add(s);
-            }
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException e) {
-                    // Ignore close errors
-                }
-            }
-        }
+        opp_nodes = new ArrayList<>();
+        DtsAutoSaver.flush();
+        document = DtsDocument.load(KonaBessCore.dts_path);
+        lines_in_dts = new DtsPieceTable();
     }
 
     private static opp decode_opp(List<String> lines) throws Exception {
@@ -98,117 +77,96 @@ public class GpuVoltEditor {
         return opp;
     }
 
-    public static void decode() throws Exception {
-        int i = -1;
-        boolean isInGpuTable = false;
-        int bracket = 0;
-        int start = -1;
-        int end;
-        while (++i < lines_in_dts.size()) {
-            String line = lines_in_dts.get(i).trim();
-            if (line.equals(""))
-                continue;
-
-            if (ChipInfo.which == ChipInfo.type.kona || ChipInfo.which == ChipInfo.type.kona_singleBin) {
-                if (line.contains("gpu-opp-table_v2") && line.contains("{")) {
-                    isInGpuTable = true;
-                    bracket++;
-                    continue;
-                }
-            } else if (ChipInfo.which == ChipInfo.type.msmnile || ChipInfo.which == ChipInfo.type.msmnile_singleBin) {
-                if (line.contains("gpu_opp_table_v2") && line.contains("{")) {
-                    isInGpuTable = true;
-                    bracket++;
-                    continue;
-                }
-            } else if (ChipInfo.which == ChipInfo.type.lito_v1 || ChipInfo.which == ChipInfo.type.lito_v2
-                    || ChipInfo.which == ChipInfo.type.lagoon) {
-                if (line.contains("gpu-opp-table {")) {
-                    isInGpuTable = true;
-                    bracket++;
-                    continue;
-                }
-            }
-
-            if (!isInGpuTable)
-                continue;
+    private static boolean isOppTableNode(DtsDocument.Node node) {
+        String key;
+        if (ChipInfo.which == ChipInfo.type.kona || ChipInfo.which == ChipInfo.type.kona_singleBin) {
+            key = "gpu-opp-table_v2";
+        } else if (ChipInfo.which == ChipInfo.type.msmnile || ChipInfo.which == ChipInfo.type.msmnile_singleBin) {
+            key = "gpu_opp_table_v2";
+        } else if (ChipInfo.which == ChipInfo.type.lito_v1 || ChipInfo.which == ChipInfo.type.lito_v2
+                || ChipInfo.which == ChipInfo.type.lagoon) {
+            return node.getName().endsWith("gpu-opp-table");
+        } else {
+            return false;
+        }
+        return node.getName().contains(key) || (node.getLabel() != null && node.getLabel().contains(key));
+    }
 
-            if (line.contains("opp-") && line.contains("{")) {
-                start = i;
-                if (opp_position < 0)
-                    opp_position = i;
-                bracket++;
+    public static void decode() throws Exception {
+        DtsDocument.Node table = document.findFirst(GpuVoltEditor::isOppTableNode);
+        List<DtsDocument.Node> oppNodes = new ArrayList<>();
+        List<DtsDocument.Node> children = table != null ? table.getChildren() : new ArrayList<>();
+        for (DtsDocument.Node node : children) {
+            if (!node.getName().startsWith("opp-"))
                 continue;
-            }
-
-            if (line.contains("}")) {
-                bracket--;
-                if (bracket == 0)
-                    break;
-                if (bracket != 1)
-                    throw new Exception();
-                end = i;
-                opps.add(decode_opp(lines_in_dts.subList(start, end + 1)));
-                lines_in_dts.subList(start, end + 1).clear();
-                i = start - 1;
-            }
+            if (!node.getChildren().isEmpty())
+                throw new Exception();
+            if (opp_position < 0)
+                opp_position = node.getStartLine();
+            opps.add(decode_opp(document.getLines(node)));
+            oppNodes.add(node);
         }
+        lines_in_dts = document.linesWithout(oppNodes);
+        opp_nodes = oppNodes;
     }
 
     public static List<String> genTable() {
+        long[][] values = getOppValues();
+        return genTable(values[0], values[1]);
+    }
+
+    /**
+     * The table text for the given opps instead of the decoded ones.
+     */
+    static List<String> genTable(long[] frequencies, long[] volts) {
         ArrayList<String> table = new ArrayList<>();
-        for (opp opp : opps) {
-            table.add("opp-" + opp.frequency + " {");
-            table.add("opp-hz = <0x0 " + opp.frequency + ">;");
-            table.add("opp-microvolt = <" + opp.volt + ">;");
+        for (int i = 0; i < frequencies.length; i++) {
+            table.add("opp-" + frequencies[i] + " {");
+            table.add("opp-hz = <0x0 " + frequencies[i] + ">;");
+            table.add("opp-microvolt = <" + volts[i] + ">;");
             table.add("};");
         }
         return table;
     }
 
+    /**
+     * @return frequency and volt of each decoded opp, as {frequencies, volts}
+     */
+    static long[][] getOppValues() {
+        long[][] values = new long[2][opps.size()];
+        for (int i = 0; i < opps.size(); i++) {
+            values[0][i] = opps.get(i).frequency;
+            values[1][i] = opps.get(i).volt;
+        }
+        return values;
+    }
+
     public static List<String> genBack(List<String> table) {
-        ArrayList<String> ret = new ArrayList<>(lines_in_dts);
-        ret.addAll(opp_position, table);
-        return ret;
+        return lines_in_dts.withInserted(opp_position, table);
     }
 
-    public static void writeOut(List<String> new_dts) throws IOException {
-        File file = new File(KonaBessCore.dts_path);
-
-        // If file exists, delete it first to avoid permission issues
-        if (file.exists()) {
-            if (!file.delete()) {
-                // If can't delete, try to set writable first
-                file.setWritable(true);
-                file.delete();
-            }
-        }
+    /**
+     * The document the table was last decoded from.
+     */
+    static DtsDocument getDocument() {
+        return document;
+    }
 
-        // Create new file
-        if (!file.createNewFile()) {
-            throw new IOException("Failed to create file: " + file.getAbsolutePath());
+    /**
+     * @return the line ranges of the opp nodes in {@link #getDocument()}, as
+     *         {starts, ends}
+     */
+    static int[][] getTableRanges() {
+        int[][] ranges = new int[2][opp_nodes.size()];
+        for (int i = 0; i < opp_nodes.size(); i++) {
+            ranges[0][i] = opp_nodes.get(i).getStartLine();
+            ranges[1][i] = opp_nodes.get(i).getEndLine();
         }
+        return ranges;
+    }
 
-        // Set proper permissions
-        file.setReadable(true, false);
-        file.setWritable(true, false);
-
-        BufferedWriter bufferedWriter = null;
-        try {
-            bufferedWriter = new BufferedWriter(new FileWriter(file));
-            for (String s : new_dts) {
-                bufferedWriter.write(s);
-                bufferedWriter.newLine();
-            }
-        } finally {
-            if (bufferedWriter != null) {
-                try {
-                    bufferedWriter.close();
-                } catch (IOException e) {
-                    // Ignore close errors
-                }
-            }
-        }
+    public static void writeOut(List<String> new_dts) throws IOException {
+        DtsAutoSaver.writeNow(KonaBessCore.dts_path, new_dts);
     }
 
     private static View generateToolBar(Activity activity) {
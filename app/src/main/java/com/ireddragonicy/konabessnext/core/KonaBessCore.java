@@ -1,5 +1,6 @@
 package com.ireddragonicy.konabessnext.core;
 
+import com.ireddragonicy.konabessnext.BuildConfig;
 import com.ireddragonicy.konabessnext.R;
 
 import android.app.Activity;
@@ -8,16 +9,26 @@ import android.os.Environment;
 import android.os.SystemProperties;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.ireddragonicy.konabessnext.core.fdt.DtbConversionScheduler;
+import com.ireddragonicy.konabessnext.core.fdt.DtbSplitter;
+import com.ireddragonicy.konabessnext.core.fdt.DtsSourceParser;
+import com.ireddragonicy.konabessnext.core.fdt.DtsSourceWriter;
+import com.ireddragonicy.konabessnext.core.fdt.FdtProbe;
+import com.ireddragonicy.konabessnext.core.fdt.FdtReader;
+import com.ireddragonicy.konabessnext.core.fdt.FdtTree;
+import com.ireddragonicy.konabessnext.core.fdt.FdtWriter;
 import com.ireddragonicy.konabessnext.utils.AssetsUtil;
+import com.ireddragonicy.konabessnext.utils.PipelineMetrics;
 import com.ireddragonicy.konabessnext.utils.RootHelper;
 
 import android.content.SharedPreferences;
@@ -25,9 +36,14 @@ import android.content.SharedPreferences;
 public class KonaBessCore {
     // Constants
     private static final String[] REQUIRED_BINARIES = { "dtc", "magiskboot" };
-    private static final byte[] DTB_MAGIC = { (byte) 0xD0, (byte) 0x0D, (byte) 0xFE, (byte) 0xED };
-    private static final int DTB_HEADER_SIZE = 8;
-    private static final int BYTE_MASK = 0xFF;
+    private static final long BOOT_CACHE_MAX_BYTES = 256L * 1024 * 1024;
+    // Bump when the cached files or their metadata change meaning, entries
+    // are also dropped on every app update
+    private static final int BOOT_CACHE_FORMAT = 1;
+    // Per-call limits for long running root commands
+    private static final long MAGISKBOOT_TIMEOUT_MS = 120_000;
+    private static final long DTC_BATCH_BASE_TIMEOUT_MS = 30_000;
+    private static final long DTC_PER_DTB_TIMEOUT_MS = 10_000;
 
     // Regex patterns for parsing (compiled once for performance)
     // Relaxed pattern: captures ID and the rest of the line content for robust
@@ -74,9 +90,20 @@ public class KonaBessCore {
     // Cache for system properties
     private static final Map<String, String> PROPERTY_CACHE = new ConcurrentHashMap<>();
 
-    // DTB metadata caches (populated by single batch IPC calls)
-    private static Map<Integer, String> dtbModelCache;
-    private static Set<Integer> singleBinDtbs;
+    // Chip type per DTB index, classified from the blob's root properties so
+    // detection does not have to read the generated DTS text back
+    private static Map<Integer, ChipInfo.type> detectedChipTypes;
+    private static List<Integer> failedDtbs;
+    // Which N.dts still match their cached N.dtb, so repack skips them
+    private static DtsChangeTracker changeTracker;
+    // SHA-256 of the partition behind boot.img, and whether the current state
+    // was restored from the boot image cache instead of being unpacked
+    private static String bootImageHash;
+    private static boolean restoredFromCache;
+    // boot.img is only unpacked by magiskboot when it is actually needed
+    private static boolean bootImageUnpacked;
+    private static List<Dtb> cachedDtbs;
+    private static final String DTC_FAILED_MARKER = "KONABESS_DTC_FAILED:";
 
     // State variables
     public static String dts_path;
@@ -119,7 +146,9 @@ public class KonaBessCore {
     public static void cleanEnv(Context context) throws IOException {
         resetState();
         filesDir = context.getFilesDir().getAbsolutePath();
-        RootHelper.execShForOutput("rm -rf " + filesDir + "/*");
+        // Everything except the persistent boot image cache
+        RootHelper.execShForOutput("find " + filesDir + " -mindepth 1 -maxdepth 1 ! -name "
+                + BootImageCache.DIR_NAME + " -exec rm -rf {} +");
     }
 
     public static void resetState() {
@@ -127,9 +156,16 @@ public class KonaBessCore {
         dts_path = null;
         dtbs = null;
         boot_name = null;
-        dtbModelCache = null;
-        singleBinDtbs = null;
+        detectedChipTypes = null;
+        failedDtbs = null;
+        changeTracker = null;
+        bootImageHash = null;
+        restoredFromCache = false;
+        bootImageUnpacked = false;
+        cachedDtbs = null;
         PROPERTY_CACHE.clear();
+        DtsDocument.clear();
+        DtsFileWriter.clear();
     }
 
     public static void setupEnv(Context context) throws IOException {
@@ -180,6 +216,10 @@ public class KonaBessCore {
 
     // Boot image operations
     public static void getBootImage(Context context) throws IOException {
+        bootImageHash = null;
+        restoredFromCache = false;
+        bootImageUnpacked = false;
+        PipelineMetrics.beginRun(context, PipelineMetrics.RUN_PREPARE);
         try {
             getBootImageByType(context, "vendor_boot");
             boot_name = "vendor_boot";
@@ -190,12 +230,37 @@ public class KonaBessCore {
     }
 
     private static void getBootImageByType(Context context, String type) throws IOException {
+        String partition = getPartitionPath(type);
+
+        // OPTIMIZATION: An unchanged partition restores its split and decoded
+        // DTBs from the cache, so dd, unpack, decode and detection are skipped
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("hash");
+        String hash = hashFile(partition);
+        stage.end();
+        if (hash != null) {
+            stage = PipelineMetrics.stage("cache_restore");
+            if (restoreFromCache(hash)) {
+                stage.end(0, dtb_num);
+                return;
+            }
+        }
+
+        stage = PipelineMetrics.stage("dd");
+        dumpPartition(partition);
+        stage.end(new File(filesDir, "boot.img").length(), 0);
+        bootImageHash = hash;
+    }
+
+    private static String getPartitionPath(String type) {
+        return "/dev/block/bootdevice/by-name/" + type + getCurrent("slot");
+    }
+
+    private static void dumpPartition(String partition) throws IOException {
         String bootImgPath = filesDir + "/boot.img";
-        String partition = "/dev/block/bootdevice/by-name/" + type + getCurrent("slot");
 
         if (!RootHelper.execAndCheck(
                 String.format("dd if=%s of=%s && chmod 644 %s", partition, bootImgPath, bootImgPath))) {
-            throw new IOException("Failed to get " + type + " image");
+            throw new IOException("Failed to get image from " + partition);
         }
 
         File target = new File(bootImgPath);
@@ -205,16 +270,115 @@ public class KonaBessCore {
         }
     }
 
+    private static String hashFile(String path) {
+        List<String> output = RootHelper.execForOutput("sha256sum " + path);
+        if (output.isEmpty()) {
+            return null;
+        }
+        String hash = output.get(0).trim().split("\\s+")[0];
+        return BootImageCache.isValidKey(hash) ? hash : null;
+    }
+
+    private static BootImageCache getBootCache() {
+        return new BootImageCache(new File(filesDir), BOOT_CACHE_MAX_BYTES,
+                BuildConfig.VERSION_CODE + "." + BOOT_CACHE_FORMAT);
+    }
+
+    private static boolean restoreFromCache(String hash) {
+        Properties meta = getBootCache().lookup(hash);
+        if (meta == null) {
+            return false;
+        }
+
+        List<Dtb> restored = new ArrayList<>();
+        try {
+            DtbType type = DtbType.valueOf(meta.getProperty("dtb_type"));
+            int count = Integer.parseInt(meta.getProperty("dtb_num"));
+            for (String item : meta.getProperty("dtbs", "").split(",")) {
+                if (item.isEmpty())
+                    continue;
+                String[] parts = item.split(":");
+                restored.add(new Dtb(Integer.parseInt(parts[0]), ChipInfo.type.valueOf(parts[1])));
+            }
+            getBootCache().restore(hash, new File(filesDir));
+
+            dtb_type = type;
+            dtb_num = count;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        cachedDtbs = restored;
+        failedDtbs = new ArrayList<>();
+        changeTracker = DtsChangeTracker.load(new File(filesDir));
+        bootImageHash = hash;
+        restoredFromCache = true;
+        return true;
+    }
+
+    private static void storeInCache() {
+        if (bootImageHash == null) {
+            return;
+        }
+        StringBuilder list = new StringBuilder();
+        for (Dtb dtb : dtbs) {
+            if (list.length() > 0)
+                list.append(',');
+            list.append(dtb.id).append(':').append(dtb.type.name());
+        }
+
+        Properties meta = new Properties();
+        meta.setProperty("dtb_type", dtb_type.name());
+        meta.setProperty("dtb_num", String.valueOf(dtb_num));
+        meta.setProperty("dtbs", list.toString());
+        try {
+            getBootCache().store(bootImageHash, new File(filesDir), meta);
+        } catch (IOException e) {
+            // The cache is only an accelerator, preparing still succeeded
+            e.printStackTrace();
+        }
+    }
+
+    // A cache hit skips dd, and reading DTBs never needs magiskboot unpack,
+    // but backup and repack do, so fetch the image and its sections on first use
+    private static void ensureBootImage() throws IOException {
+        if (new File(filesDir, "boot.img").exists()) {
+            return;
+        }
+        dumpPartition(getPartitionPath(boot_name));
+        if (bootImageHash != null && !bootImageHash.equals(hashFile(filesDir + "/boot.img"))) {
+            new File(filesDir, "boot.img").delete();
+            throw new IOException("The " + boot_name + " partition changed since it was prepared");
+        }
+    }
+
+    private static List<String> awaitRoot(RootHelper.StreamingJob job, String what) throws IOException {
+        try {
+            return job.get().getOut();
+        } catch (InterruptedException e) {
+            job.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException(what + " interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(what + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
     public static void writeBootImage(Context context) throws IOException {
         String newBootPath = filesDir + "/boot_new.img";
         String partition = "/dev/block/bootdevice/by-name/" + boot_name + getCurrent("slot");
 
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("flash");
         if (!RootHelper.execAndCheck(String.format("dd if=%s of=%s", newBootPath, partition))) {
             throw new IOException("Failed to write boot image");
         }
+        stage.end(new File(newBootPath).length(), 0);
+        PipelineMetrics.endRun(context);
     }
 
     public static void backupBootImage(Context context) throws IOException {
+        ensureBootImage();
         String source = filesDir + "/boot.img";
 
         // Use internal storage root directory
@@ -236,6 +400,12 @@ public class KonaBessCore {
 
     public static void checkDevice(Context context) throws IOException {
         setupEnv(context);
+        if (restoredFromCache) {
+            dtbs = new ArrayList<>(cachedDtbs);
+            PipelineMetrics.endRun(context);
+            return;
+        }
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("check_device");
         dtbs = new ArrayList<>();
 
         // OPTIMIZATION: Grant read permissions once so Java can read files directly
@@ -243,30 +413,48 @@ public class KonaBessCore {
         RootHelper.execShForOutput("chmod 644 " + filesDir + "/*.dts");
 
         for (int i = 0; i < dtb_num; i++) {
-            File dtsFile = new File(filesDir, i + ".dts");
-            if (!dtsFile.exists())
-                continue;
-
-            String content = readFileToString(dtsFile);
-            ChipInfo.type chipType = detectChipType(content, i);
+            ChipInfo.type chipType = detectedChipTypes != null ? detectedChipTypes.get(i) : null;
+            if (chipType == null) {
+                // Not probed from the blob (dtc fallback), detect from the DTS text
+                File dtsFile = new File(filesDir, i + ".dts");
+                if (!dtsFile.exists())
+                    continue;
+                chipType = detectChipType(readFileToString(dtsFile), i);
+            }
 
             if (chipType != ChipInfo.type.unknown) {
                 dtbs.add(new Dtb(i, chipType));
             }
         }
+        stage.end(0, dtbs.size());
+
+        stage = PipelineMetrics.stage("cache_store");
+        storeInCache();
+        stage.end();
+        PipelineMetrics.endRun(context);
     }
 
-    private static ChipInfo.type detectChipType(String content, int index) {
+    private static ChipInfo.type detectChipType(String content, int index) throws IOException {
         // Extract "model" property using Regex
         Matcher m = MODEL_PROPERTY.matcher(content);
         String modelContent = "";
         if (m.find()) {
             modelContent = m.group(1);
         }
+        return detectChipType(modelContent, () -> isSingleBin(content), index);
+    }
 
+    @FunctionalInterface
+    private interface SingleBinCheck {
+        boolean isSingleBin() throws IOException;
+    }
+
+    // The single bin check is only evaluated for chips that have both variants
+    private static ChipInfo.type detectChipType(String modelContent, SingleBinCheck singleBin, int index)
+            throws IOException {
         // Special case for OP4A79 device
         if ("OP4A79".equals(getCurrent("device")) && modelContent.contains("kona v2")) {
-            return isSingleBin(content) ? ChipInfo.type.kona_singleBin : ChipInfo.type.kona;
+            return singleBin.isSingleBin() ? ChipInfo.type.kona_singleBin : ChipInfo.type.kona;
         }
 
         // Match against chip mappings
@@ -277,7 +465,7 @@ public class KonaBessCore {
                 // Check if it needs single bin variant
                 if (baseType == ChipInfo.type.kona || baseType == ChipInfo.type.msmnile ||
                         baseType == ChipInfo.type.lahaina) {
-                    return determineChipVariant(index, baseType, content);
+                    return determineChipVariant(index, baseType, singleBin.isSingleBin());
                 }
 
                 return baseType;
@@ -291,10 +479,10 @@ public class KonaBessCore {
         return content.contains("qcom,gpu-pwrlevels {");
     }
 
-    private static ChipInfo.type determineChipVariant(int index, ChipInfo.type regular, String content) {
+    private static ChipInfo.type determineChipVariant(int index, ChipInfo.type regular, boolean isSingleBin) {
         try {
             ChipInfo.type singleBin = ChipInfo.type.valueOf(regular.name() + "_singleBin");
-            return isSingleBin(content) ? singleBin : regular;
+            return isSingleBin ? singleBin : regular;
         } catch (IllegalArgumentException e) {
             return regular;
         }
@@ -319,27 +507,148 @@ public class KonaBessCore {
     // all commands into a single shell execution for optimal performance.
 
     public static void bootImage2dts(Context context) throws IOException {
-        unpackBootImage(context);
-        dtb_num = dtbSplit(context);
-
-        // OPTIMIZATION: Batch all DTB->DTS conversions into single shell execution
-        // Instead of: for (i) { execShForOutput("./dtc ...") } which forks 100+ times
-        // We now: execShForOutput("cd dir && ./dtc 0 && ./dtc 1 && ... && ./dtc N")
-        StringBuilder batchCmd = new StringBuilder();
-        batchCmd.append("cd ").append(filesDir);
+        if (restoredFromCache) {
+            // DTB/DTS files and dtb_num/dtb_type came from the cache
+            return;
+        }
+        // OPTIMIZATION: Locate the DTBs from the boot image header and split them
+        // straight out of boot.img. magiskboot unpack (which writes the kernel,
+        // ramdisk and every other section) is only used for formats the Java
+        // parser does not know, and otherwise deferred until repack.
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("split");
+        long imageSize = new File(filesDir, "boot.img").length();
+        dtb_num = splitFromBootImage();
+        if (dtb_num < 0) {
+            stage = PipelineMetrics.stage("unpack");
+            unpackBootImage(context);
+            stage.end(imageSize, 0);
+            stage = PipelineMetrics.stage("split");
+            dtb_num = dtbSplit(context);
+        }
+        stage.end(imageSize, dtb_num);
+
+        // OPTIMIZATION: Classify every blob from its root model first and only
+        // decompile the ones that map to a supported chip. Unsupported DTBs stay
+        // as N.dtb and are repacked verbatim, they never become DTS text.
+        detectedChipTypes = new ConcurrentHashMap<>();
+        changeTracker = new DtsChangeTracker(new File(filesDir));
+        for (int i = 0; i < dtb_num; i++) {
+            GpuTableSnapshot.invalidate(filesDir + "/" + i + ".dts");
+        }
+        List<Integer> candidates = new ArrayList<>();
+        List<Integer> unreadable = new ArrayList<>();
 
+        stage = PipelineMetrics.stage("probe");
         for (int i = 0; i < dtb_num; i++) {
-            batchCmd.append(" && ./dtc -I dtb -O dts ")
-                    .append(i).append(".dtb -o ").append(i).append(".dts")
-                    .append(" && rm -f ").append(i).append(".dtb");
+            ChipInfo.type chipType;
+            try {
+                FdtProbe probe = FdtReader.probe(new File(filesDir, i + ".dtb"));
+                chipType = detectChipType(probe.getModel(),
+                        () -> probe.hasNode("qcom,gpu-pwrlevels"), i);
+            } catch (IOException e) {
+                unreadable.add(i);
+                continue;
+            }
+            detectedChipTypes.put(i, chipType);
+            if (chipType != ChipInfo.type.unknown) {
+                candidates.add(i);
+            }
+        }
+        stage.end(0, dtb_num);
+
+        // Decode the supported DTBs in-process with the pure-Java FDT parser,
+        // spread over all cores. This avoids forking dtc 100+ times.
+        stage = PipelineMetrics.stage("decode");
+        DtbConversionScheduler.Result result;
+        try {
+            result = DtbConversionScheduler.run(candidates, KonaBessCore::convertDtb);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("DTB to DTS conversion interrupted", e);
+        }
+        stage.end(0, candidates.size());
+
+        // Blobs the Java parser rejects go through dtc and text based detection
+        List<Integer> fallback = new ArrayList<>(unreadable);
+        fallback.addAll(result.getFailedIndices());
+        Collections.sort(fallback);
+        if (fallback.isEmpty()) {
+            failedDtbs = new ArrayList<>();
+        } else {
+            stage = PipelineMetrics.stage("dtc_decode");
+            failedDtbs = convertWithDtc(fallback);
+            stage.end(0, fallback.size());
+        }
+        for (int i : failedDtbs) {
+            // No DTS to edit, keep it out of the chipset list
+            detectedChipTypes.remove(i);
         }
 
-        List<String> output = RootHelper.execShForOutput(batchCmd.toString());
+        changeTracker.save();
+
+        int attempted = candidates.size() + unreadable.size();
+        if (attempted > 0 && failedDtbs.size() == attempted) {
+            throw new IOException("DTB to DTS conversion failed for all " + attempted + " DTBs");
+        }
+    }
+
+    private static void convertDtb(int index) throws IOException {
+        File dtbFile = new File(filesDir, index + ".dtb");
+        FdtTree tree = FdtReader.read(dtbFile);
+        DtsSourceWriter.write(tree, new File(filesDir, index + ".dts"));
+        // N.dtb stays as the compiled form of the untouched source
+        changeTracker.markClean(index);
+    }
+
+    // Fallback for blobs the Java parser rejects: run dtc on each of them in a
+    // single shell execution. Every index reports on its own instead of one
+    // failure aborting an && chain.
+    private static List<Integer> convertWithDtc(List<Integer> indices) {
+        StringBuilder batchCmd = new StringBuilder();
+        batchCmd.append("cd ").append(filesDir).append(" && for i in");
+        for (int i : indices) {
+            batchCmd.append(' ').append(i);
+        }
+        batchCmd.append("; do ./dtc -I dtb -O dts $i.dtb -o $i.dts && rm -f $i.dtb")
+                .append(" || echo \"").append(DTC_FAILED_MARKER).append("$i\"; done");
+
+        // Failures are picked up as dtc reports them; the limit grows with the
+        // batch instead of one fixed timeout for any number of DTBs
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        RootHelper.StreamingJob job = RootHelper.execStreaming(
+                DTC_BATCH_BASE_TIMEOUT_MS + DTC_PER_DTB_TIMEOUT_MS * indices.size(),
+                line -> {
+                    if (line.startsWith(DTC_FAILED_MARKER)) {
+                        try {
+                            failed.add(Integer.parseInt(line.substring(DTC_FAILED_MARKER.length()).trim()));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    }
+                },
+                batchCmd.toString());
 
-        // Verify at least the last DTS file was created (batch succeeded)
-        if (dtb_num > 0 && !new File(filesDir, (dtb_num - 1) + ".dts").exists()) {
-            throw new IOException("DTB to DTS batch conversion failed: " + String.join("\n", output));
+        try {
+            awaitRoot(job, "dtc batch");
+        } catch (IOException e) {
+            // Timed out or shell died: every DTB dtc did not get to still has its blob
+            e.printStackTrace();
+            for (int i : indices) {
+                if (!failed.contains(i) && new File(filesDir, i + ".dtb").exists()) {
+                    failed.add(i);
+                }
+            }
         }
+        List<Integer> result = new ArrayList<>(failed);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Indices whose DTB could not be converted to DTS during the last unpack.
+     * Those DTBs are skipped by detection and repacked from their original blob.
+     */
+    public static List<Integer> getFailedDtbIndices() {
+        return failedDtbs != null ? failedDtbs : Collections.emptyList();
     }
 
     private static void unpackBootImage(Context context) throws IOException {
@@ -347,6 +656,34 @@ public class KonaBessCore {
                 String.format("cd %s && ./magiskboot unpack boot.img", filesDir));
 
         determineDtbType();
+        bootImageUnpacked = true;
+    }
+
+    // Returns the number of DTBs written, or -1 when the image has to go
+    // through magiskboot instead
+    private static int splitFromBootImage() {
+        try (RandomAccessFile raf = new RandomAccessFile(new File(filesDir, "boot.img"), "r");
+                FileChannel channel = raf.getChannel()) {
+            BootImageHeader header = BootImageHeader.parse(channel);
+
+            if (header.hasDtb() && header.hasKernelDtb()) {
+                dtb_type = DtbType.BOTH;
+            } else if (header.hasDtb()) {
+                dtb_type = DtbType.DTB;
+            } else if (header.hasKernelDtb()) {
+                dtb_type = DtbType.KERNEL_DTB;
+            } else {
+                return -1;
+            }
+
+            // Same preference as dtbSplit(): the DTB section wins over kernel_dtb
+            return header.hasDtb()
+                    ? DtbSplitter.split(channel, header.dtbOffset, header.dtbSize, new File(filesDir))
+                    : DtbSplitter.split(channel, header.kernelDtbOffset, header.kernelDtbSize,
+                            new File(filesDir));
+        } catch (IOException e) {
+            return -1;
+        }
     }
 
     private static void determineDtbType() throws IOException {
@@ -371,13 +708,11 @@ public class KonaBessCore {
             new File(filesDir, "kernel_dtb").delete();
         }
 
-        byte[] dtbBytes = Files.readAllBytes(dtbFile.toPath());
-        List<Integer> offsets = findDtbOffsets(dtbBytes);
-
-        writeDtbChunks(dtbBytes, offsets);
+        // OPTIMIZATION: Memory-mapped scan + transferTo, no heap copy of the image
+        int count = DtbSplitter.split(dtbFile, new File(filesDir));
         dtbFile.delete();
 
-        return offsets.size();
+        return count;
     }
 
     private static File getDtbFile() throws IOException {
@@ -387,81 +722,138 @@ public class KonaBessCore {
         return new File(filesDir, filename);
     }
 
-    private static List<Integer> findDtbOffsets(byte[] data) {
-        List<Integer> offsets = new ArrayList<>();
-        int i = 0;
+    public static void dts2bootImage(Context context) throws IOException {
+        // OPTIMIZATION: Only recompile the DTS files that changed since they were
+        // decoded (or last repacked), reuse the cached N.dtb for the rest, and
+        // stream the blobs straight into the concatenated dtb/kernel_dtb in one
+        // pass. dtc is only forked for sources the Java parser cannot handle
+        // (e.g. phandle references).
+        PipelineMetrics.beginRun(context, PipelineMetrics.RUN_REPACK);
+        if (!new File(filesDir, "boot.img").exists()) {
+            PipelineMetrics.Stage stage = PipelineMetrics.stage("dd");
+            ensureBootImage();
+            stage.end(new File(filesDir, "boot.img").length(), 0);
+        }
+
+        // magiskboot unpack (deferred since prepare) runs in the background while
+        // the DTBs are compiled into a side file, which then replaces the
+        // dtb/kernel_dtb it extracted
+        RootHelper.StreamingJob unpack = bootImageUnpacked ? null
+                : RootHelper.execStreaming(MAGISKBOOT_TIMEOUT_MS, null,
+                        String.format("cd %s && ./magiskboot unpack boot.img", filesDir));
 
-        while (i + DTB_HEADER_SIZE < data.length) {
-            if (isDtbMagic(data, i)) {
-                offsets.add(i);
-                int size = readDtbSize(data, i + 4);
-                i += Math.max(size, 1);
-            } else {
-                i++;
+        String outputFilename = (dtb_type == DtbType.KERNEL_DTB) ? "kernel_dtb" : "dtb";
+        File dtbOutput = new File(filesDir, outputFilename);
+        File pending = new File(filesDir, outputFilename + ".new");
+        pending.delete();
+
+        if (changeTracker == null) {
+            changeTracker = DtsChangeTracker.load(new File(filesDir));
+        }
+        PipelineMetrics.Stage stage = PipelineMetrics.stage("compile");
+        int recompiled = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pending), 256 * 1024)) {
+            for (int i = 0; i < dtb_num; i++) {
+                if (writeCompiledDtb(i, out)) {
+                    recompiled++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (unpack != null) {
+                unpack.cancel(true);
+            }
+            throw e;
+        } finally {
+            changeTracker.save();
+        }
+
+        stage.end(pending.length(), recompiled);
+
+        if (unpack != null) {
+            stage = PipelineMetrics.stage("unpack_wait");
+            awaitRoot(unpack, "magiskboot unpack");
+            stage.end();
+            // The side file was named after the layout the header parser found,
+            // so it may only replace what magiskboot extracted if they agree
+            DtbType parsed = dtb_type;
+            determineDtbType();
+            DtbType unpacked = dtb_type;
+            if (unpacked != parsed) {
+                dtb_type = parsed;
+                pending.delete();
+                throw new IOException("magiskboot unpacked DTB layout " + unpacked
+                        + " but the boot image was prepared as " + parsed);
             }
+            bootImageUnpacked = true;
         }
-
-        return offsets;
-    }
-
-    private static boolean isDtbMagic(byte[] data, int offset) {
-        return Arrays.equals(Arrays.copyOfRange(data, offset, offset + 4), DTB_MAGIC);
-    }
-
-    private static int readDtbSize(byte[] data, int offset) {
-        return ((data[offset] & BYTE_MASK) << 24) |
-                ((data[offset + 1] & BYTE_MASK) << 16) |
-                ((data[offset + 2] & BYTE_MASK) << 8) |
-                (data[offset + 3] & BYTE_MASK);
-    }
-
-    private static void writeDtbChunks(byte[] data, List<Integer> offsets) throws IOException {
-        for (int i = 0; i < offsets.size(); i++) {
-            int start = offsets.get(i);
-            int end = (i + 1 < offsets.size()) ? offsets.get(i + 1) : data.length;
-
-            Files.write(
-                    Paths.get(filesDir, i + ".dtb"),
-                    Arrays.copyOfRange(data, start, end));
+        dtbOutput.delete();
+        if (!pending.renameTo(dtbOutput)) {
+            throw new IOException("Failed to replace " + outputFilename);
         }
-    }
 
-    public static void dts2bootImage(Context context) throws IOException {
-        // OPTIMIZATION: Batch DTS->DTB conversion, cat, copy, and repack into single
-        // shell execution
-        // This reduces 100+ process forks to exactly 1, eliminating shell context
-        // initialization overhead
         StringBuilder batchCmd = new StringBuilder();
         batchCmd.append("cd ").append(filesDir);
 
-        // Step 1: Convert all DTS files to DTB (batched)
-        for (int i = 0; i < dtb_num; i++) {
-            batchCmd.append(" && ./dtc -I dts -O dtb ")
-                    .append(i).append(".dts -o ").append(i).append(".dtb");
-        }
-
-        // Step 2: Concatenate all DTB files into single output file
-        String outputFilename = (dtb_type == DtbType.KERNEL_DTB) ? "kernel_dtb" : "dtb";
-        batchCmd.append(" && cat");
-        for (int i = 0; i < dtb_num; i++) {
-            batchCmd.append(" ").append(i).append(".dtb");
-        }
-        batchCmd.append(" > ").append(outputFilename);
-
-        // Step 3: Copy dtb to kernel_dtb if DtbType.BOTH
+        // Copy dtb to kernel_dtb if DtbType.BOTH
         if (dtb_type == DtbType.BOTH) {
             batchCmd.append(" && cp dtb kernel_dtb");
         }
 
-        // Step 4: Repack boot image
+        // Repack boot image
         batchCmd.append(" && ./magiskboot repack boot.img boot_new.img");
 
-        List<String> output = RootHelper.execShForOutput(batchCmd.toString());
+        stage = PipelineMetrics.stage("repack");
+        List<String> output = awaitRoot(
+                RootHelper.execStreaming(MAGISKBOOT_TIMEOUT_MS, null, batchCmd.toString()),
+                "magiskboot repack");
 
         // Verify boot_new.img was created
-        if (!new File(filesDir, "boot_new.img").exists()) {
+        File newBoot = new File(filesDir, "boot_new.img");
+        if (!newBoot.exists()) {
             throw new IOException("DTS to boot image conversion failed: " + String.join("\n", output));
         }
+        stage.end(newBoot.length(), 0);
+    }
+
+    // Returns true when the DTB had to be recompiled, false when its cached blob was reused
+    private static boolean writeCompiledDtb(int index, OutputStream out) throws IOException {
+        File source = new File(filesDir, index + ".dts");
+        File original = new File(filesDir, index + ".dtb");
+        if (original.exists() && (!source.exists() || !changeTracker.isDirty(index))) {
+            // Never decompiled (unsupported chip or conversion failed) or not
+            // edited since: the cached blob is still exact
+            Files.copy(original.toPath(), out);
+            return false;
+        }
+
+        FdtTree tree;
+        try {
+            tree = DtsSourceParser.parse(source);
+        } catch (IOException e) {
+            tree = null;
+        }
+
+        if (tree != null) {
+            byte[] blob = FdtWriter.toBlob(tree);
+            out.write(blob);
+            // Refresh the cache so the next repack can skip this index again
+            original.delete();
+            Files.write(original.toPath(), blob);
+            changeTracker.markClean(index);
+            return true;
+        }
+
+        // Fallback: let dtc compile this one source, then append its blob
+        original.delete();
+        List<String> output = RootHelper.execShForOutput(String.format(
+                "cd %s && ./dtc -I dts -O dtb %d.dts -o %d.dtb && chmod 644 %d.dtb",
+                filesDir, index, index, index));
+        if (!original.exists()) {
+            throw new IOException("Failed to compile " + index + ".dts: " + String.join("\n", output));
+        }
+        Files.copy(original.toPath(), out);
+        changeTracker.markClean(index);
+        return true;
     }
 
     // Utility methods
@@ -3,12 +3,17 @@ package com.ireddragonicy.konabessnext.core;
 import com.ireddragonicy.konabessnext.R;
 import com.ireddragonicy.konabessnext.ui.MainActivity;
 import com.ireddragonicy.konabessnext.ui.ExportHistoryActivity;
+import com.ireddragonicy.konabessnext.ui.SettingsActivity;
 
 import android.app.Activity;
 import androidx.appcompat.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Environment;
+import android.provider.OpenableColumns;
+import android.util.JsonReader;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.TextView;
@@ -16,20 +21,33 @@ import android.widget.Toast;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -70,63 +88,166 @@ public class TableIO {
         }
     }
 
-    private static boolean decodeAndWriteData(JSONObject jsonObject) throws Exception {
-        if (!ChipInfo.which.isEquivalentTo(ChipInfo.type.valueOf(jsonObject.getString(json_keys.CHIP))))
+    private static boolean decodeAndWriteData(String chip, String freqData, String voltData) throws Exception {
+        if (!ChipInfo.which.isEquivalentTo(ChipInfo.type.valueOf(chip)))
             return true;
         prepareTables();
-        ArrayList<String> freq = new ArrayList<>(Arrays.asList(jsonObject.getString(json_keys.FREQ).split("\n")));
-        GpuTableEditor.writeOut(GpuTableEditor.genBack(freq));
+        List<String> volt = null;
         if (!ChipInfo.which.ignoreVoltTable) {
-            ArrayList<String> volt = new ArrayList<>(Arrays.asList(jsonObject.getString(json_keys.VOLT).split("\n")));
-            // Init again because the dts file has been updated
-            GpuVoltEditor.init();
-            GpuVoltEditor.decode();
-            GpuVoltEditor.writeOut(GpuVoltEditor.genBack(volt));
+            if (voltData == null)
+                throw new Exception();
+            volt = Arrays.asList(voltData.split("\n"));
         }
-
+        writeTables(Arrays.asList(freqData.split("\n")), volt);
         return false;
     }
 
-    private static String getFreqData() {
-        StringBuilder data = new StringBuilder();
-        for (String line : GpuTableEditor.genTable())
-            data.append(line).append("\n");
-        return data.toString();
+    private static boolean decodeAndWriteData(CompactTableFormat.Config config) throws Exception {
+        if (!ChipInfo.which.isEquivalentTo(ChipInfo.type.valueOf(config.chip)))
+            return true;
+        prepareTables();
+        List<String> volt = null;
+        if (!ChipInfo.which.ignoreVoltTable) {
+            if (config.oppFrequencies == null)
+                throw new Exception();
+            volt = GpuVoltEditor.genTable(config.oppFrequencies, config.oppVolts);
+        }
+        writeTables(GpuTableEditor.genTable(config.bins), volt);
+        return false;
     }
 
-    private static String getVoltData() {
-        StringBuilder data = new StringBuilder();
-        for (String line : GpuVoltEditor.genTable())
-            data.append(line).append("\n");
-        return data.toString();
+    /**
+     * Put imported tables into the DTS the editors just decoded, both in one
+     * write. The new text is built in memory and written atomically, so if
+     * anything fails the file is left exactly as it was, never with only the
+     * frequency table applied.
+     *
+     * @param volt null if the chip has no volt table
+     */
+    private static void writeTables(List<String> freq, List<String> volt) throws IOException {
+        if (volt == null) {
+            GpuTableEditor.writeOut(GpuTableEditor.genBack(freq));
+            return;
+        }
+        DtsDocument document = GpuTableEditor.getDocument();
+        if (GpuVoltEditor.getDocument() != document)
+            throw new IOException("Tables were decoded from different files");
+        int[][] freqRanges = GpuTableEditor.getTableRanges();
+        int[][] voltRanges = GpuVoltEditor.getTableRanges();
+        List<String> dts = document.linesReplacing(
+                new int[][] { freqRanges[0], voltRanges[0] },
+                new int[][] { freqRanges[1], voltRanges[1] },
+                Arrays.asList(freq, volt));
+        DtsAutoSaver.writeNow(KonaBessCore.dts_path, dts);
     }
 
-    private static String getConfig(String desc) throws IOException {
-        JSONObject jsonObject = new JSONObject();
+    private static final String EXPORT_PREFIX = "konabess://";
+    // Real configs decompress to well under a megabyte, anything past this is
+    // damage or a gzip bomb, and bulk imports read several at once
+    private static final long MAX_CONFIG_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Write an export of the current tables to {@code out}: the prefix and the
+     * Base64 of the gzipped config, either in {@link CompactTableFormat} or as
+     * JSON. The JSON goes field by field, line by line straight into the
+     * compressor, so the config is never held in memory as a whole. Closes
+     * {@code out}.
+     */
+    private static void writeConfig(String desc, boolean compact, OutputStream out) throws IOException {
         try {
             prepareTables();
-            /*
-             * jsonObject.put(json_keys.MODEL, getCurrent("model"));
-             * jsonObject.put(json_keys.BRAND, getCurrent("brand"));
-             * jsonObject.put(json_keys.ID, getCurrent("id"));
-             * jsonObject.put(json_keys.VERSION, getCurrent("version"));
-             * jsonObject.put(json_keys.FINGERPRINT, getCurrent("fingerprint"));
-             * jsonObject.put(json_keys.MANUFACTURER, getCurrent("manufacturer"));
-             * jsonObject.put(json_keys.DEVICE, getCurrent("device"));
-             * jsonObject.put(json_keys.NAME, getCurrent("name"));
-             * jsonObject.put(json_keys.BOARD, getCurrent("board"));
-             */
-            jsonObject.put(json_keys.CHIP, ChipInfo.which.name());
-            jsonObject.put(json_keys.DESCRIPTION, desc);
-            jsonObject.put(json_keys.FREQ, getFreqData());
-            if (!ChipInfo.which.ignoreVoltTable)
-                jsonObject.put(json_keys.VOLT, getVoltData());
-        } catch (JSONException e) {
-            e.printStackTrace();
         } catch (Exception e) {
+            out.close();
             throw new IOException("Failed to prepare configuration", e);
         }
-        return GzipUtils.compress(jsonObject.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(EXPORT_PREFIX.getBytes(StandardCharsets.US_ASCII));
+        if (compact) {
+            long[][] opps = ChipInfo.which.ignoreVoltTable ? null : GpuVoltEditor.getOppValues();
+            try (OutputStream gzip = GzipUtils.compressingStream(out)) {
+                CompactTableFormat.write(gzip, new CompactTableFormat.Config(ChipInfo.which.name(), desc,
+                        GpuTableEditor.bins, opps != null ? opps[0] : null, opps != null ? opps[1] : null));
+            }
+            return;
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                GzipUtils.compressingStream(out), StandardCharsets.UTF_8))) {
+            /*
+             * Further keys that could be exported: model, brand, id, version,
+             * fingerprint, manufacturer, device, name, board.
+             */
+            writer.write('{');
+            writeJsonString(writer, json_keys.CHIP);
+            writer.write(':');
+            writeJsonString(writer, ChipInfo.which.name());
+            writer.write(',');
+            writeJsonString(writer, json_keys.DESCRIPTION);
+            writer.write(':');
+            writeJsonString(writer, desc);
+            writer.write(',');
+            writeJsonString(writer, json_keys.FREQ);
+            writer.write(':');
+            writeJsonLines(writer, GpuTableEditor.genTable());
+            if (!ChipInfo.which.ignoreVoltTable) {
+                writer.write(',');
+                writeJsonString(writer, json_keys.VOLT);
+                writer.write(':');
+                writeJsonLines(writer, GpuVoltEditor.genTable());
+            }
+            writer.write('}');
+        }
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        escapeJson(writer, value);
+        writer.write('"');
+    }
+
+    /**
+     * Lines as one JSON string, each line followed by "\n".
+     */
+    private static void writeJsonLines(Writer writer, List<String> lines) throws IOException {
+        writer.write('"');
+        for (String line : lines) {
+            escapeJson(writer, line);
+            writer.write("\\n");
+        }
+        writer.write('"');
+    }
+
+    private static void escapeJson(Writer writer, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                case '\b':
+                    writer.write("\\b");
+                    break;
+                case '\f':
+                    writer.write("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
     }
 
     private static void import_edittext(Activity activity) {
@@ -187,7 +308,9 @@ public class TableIO {
         waiting.show();
         new Thread(() -> {
             try {
-                String data = "konabess://" + getConfig(desc);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writeConfig(desc, false, out);
+                String data = out.toString("US-ASCII");
                 activity.runOnUiThread(() -> {
                     waiting.dismiss();
                     DialogUtil.showDetailedInfo(activity, R.string.export_done, R.string.export_done_msg,
@@ -245,13 +368,10 @@ public class TableIO {
             String destPath = Environment.getExternalStorageDirectory().getAbsolutePath() + "/" + finalFilename;
 
             try {
-                String data = "konabess://" + getConfig(desc);
-
                 // Write to temp file in app's private directory first
                 File tempFile = new File(activity.getFilesDir(), "temp_export.txt");
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(tempFile));
-                bufferedWriter.write(data);
-                bufferedWriter.close();
+                writeConfig(desc, SettingsActivity.isCompactExportEnabled(activity),
+                        new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
 
                 // Use root to copy file to sdcard
                 String cmd = String.format("cat '%s' > '%s' && chmod 644 '%s'",
@@ -291,69 +411,194 @@ public class TableIO {
         }
     }
 
+    /**
+     * Fails once more than a given number of bytes were read through it.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                count(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long bytes) throws IOException {
+            remaining -= bytes;
+            if (remaining < 0) {
+                throw new IOException("Corrupt config");
+            }
+        }
+    }
+
+    /**
+     * Reads an export in two steps. {@link #readHeader} only decodes as far as
+     * the chip and description, so data for another chip or damaged data is
+     * turned down before any table is decompressed; {@link #readTables} reads
+     * the rest.
+     */
+    private static class ConfigReader implements Closeable {
+        final InputStream text;
+        InputStream payload;
+        boolean compact;
+        JsonReader json;
+        String chip;
+        String desc;
+        // Tables of a JSON config, or the whole compact config
+        String freq;
+        String volt;
+        CompactTableFormat.Config compactConfig;
+
+        ConfigReader(InputStream text) {
+            this.text = text;
+        }
+
+        void readHeader() throws IOException {
+            for (byte b : EXPORT_PREFIX.getBytes(StandardCharsets.US_ASCII)) {
+                if (text.read() != b) {
+                    throw new IOException("Not an exported config");
+                }
+            }
+            payload = new BufferedInputStream(
+                    new LimitedInputStream(GzipUtils.uncompressingStream(text), MAX_CONFIG_BYTES));
+            compact = CompactTableFormat.isCompact(payload);
+            if (compact) {
+                compactConfig = CompactTableFormat.readHeader(payload);
+                chip = compactConfig.chip;
+                desc = compactConfig.description;
+                return;
+            }
+            // Exports write chip and description first, the tables are only read here if they come earlier
+            json = new JsonReader(new InputStreamReader(payload, StandardCharsets.UTF_8));
+            json.beginObject();
+            while ((chip == null || desc == null) && json.hasNext()) {
+                readJsonField();
+            }
+            if (chip == null || desc == null) {
+                throw new IOException("Incomplete config");
+            }
+        }
+
+        void readTables() throws IOException {
+            if (compact) {
+                compactConfig = CompactTableFormat.readTables(compactConfig, payload);
+                return;
+            }
+            while (json.hasNext()) {
+                readJsonField();
+            }
+            json.endObject();
+            if (freq == null) {
+                throw new IOException("Incomplete config");
+            }
+        }
+
+        private void readJsonField() throws IOException {
+            switch (json.nextName()) {
+                case json_keys.CHIP:
+                    chip = json.nextString();
+                    break;
+                case json_keys.DESCRIPTION:
+                    desc = json.nextString();
+                    break;
+                case json_keys.FREQ:
+                    freq = json.nextString();
+                    break;
+                case json_keys.VOLT:
+                    volt = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (payload != null)
+                payload.close();
+            else
+                text.close();
+        }
+    }
+
     private static class showDecodeDialog extends Thread {
         Activity activity;
-        String data;
+        InputStream source;
         boolean error;
-        JSONObject jsonObject;
+        boolean incompatible;
+        ConfigReader config;
 
         public showDecodeDialog(Activity activity, String data) {
+            this(activity, new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1)));
+        }
+
+        /**
+         * @param source the exported text, closed when done
+         */
+        public showDecodeDialog(Activity activity, InputStream source) {
             this.activity = activity;
-            this.data = data;
+            this.source = source;
         }
 
         public void run() {
-            error = !data.startsWith("konabess://");
-            if (!error) {
-                try {
-                    data = data.replace("konabess://", "");
-                    String decoded_data = GzipUtils.uncompress(data);
-                    jsonObject = new JSONObject(decoded_data);
-                    activity.runOnUiThread(() -> {
-                        waiting_import.dismiss();
-                        try {
-                            new com.google.android.material.dialog.MaterialAlertDialogBuilder(activity)
-                                    .setTitle(R.string.going_import)
-                                    .setMessage(jsonObject.getString(json_keys.DESCRIPTION) + "\n"
-                                            + activity.getResources().getString(R.string.compatible_chip)
-                                            + ChipInfo.type.valueOf(jsonObject.getString(json_keys.CHIP))
-                                                    .getDescription(activity))
-                                    .setPositiveButton(R.string.confirm, (dialog, which) -> {
-                                        if (which == DialogInterface.BUTTON_POSITIVE) {
-                                            dialog.dismiss();
-                                            waiting_import.show();
-                                            new Thread(() -> {
-                                                try {
-                                                    error = decodeAndWriteData(jsonObject);
-                                                } catch (Exception e) {
-                                                    error = true;
-                                                }
-                                                activity.runOnUiThread(() -> {
-                                                    waiting_import.dismiss();
-                                                    if (!error) {
-                                                        Toast.makeText(activity,
-                                                                R.string.success_import,
-                                                                Toast.LENGTH_SHORT).show();
-                                                        if (activity instanceof MainActivity) {
-                                                            ((MainActivity) activity).notifyGpuTableChanged();
-                                                        }
-                                                    } else
-                                                        Toast.makeText(activity,
-                                                                R.string.failed_incompatible,
-                                                                Toast.LENGTH_LONG).show();
-                                                });
-                                            }).start();
-                                        }
-                                    })
-                                    .setNegativeButton(R.string.cancel, null)
-                                    .create().show();
-                        } catch (Exception e) {
-                            error = true;
-                        }
-                    });
-                } catch (Exception e) {
-                    error = true;
+            try (ConfigReader reader = new ConfigReader(source)) {
+                reader.readHeader();
+                ChipInfo.type chip = ChipInfo.type.valueOf(reader.chip);
+                if (ChipInfo.which != null && !ChipInfo.which.isEquivalentTo(chip)) {
+                    // Not worth decompressing the tables
+                    incompatible = true;
+                } else {
+                    reader.readTables();
+                    config = reader;
                 }
+            } catch (Exception e) {
+                error = true;
+            }
+            if (incompatible) {
+                activity.runOnUiThread(() -> {
+                    waiting_import.dismiss();
+                    Toast.makeText(activity, R.string.failed_incompatible, Toast.LENGTH_LONG).show();
+                });
+                return;
+            }
+            if (!error) {
+                activity.runOnUiThread(() -> {
+                    waiting_import.dismiss();
+                    try {
+                        confirmAndApply(activity, config);
+                    } catch (Exception e) {
+                        Toast.makeText(activity, R.string.failed_decoding, Toast.LENGTH_LONG).show();
+                    }
+                });
             }
             if (error)
                 activity.runOnUiThread(() -> {
@@ -363,6 +608,46 @@ public class TableIO {
         }
     }
 
+    /**
+     * Ask whether to apply a fully read config, and apply it if so.
+     */
+    private static void confirmAndApply(Activity activity, ConfigReader config) {
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(activity)
+                .setTitle(R.string.going_import)
+                .setMessage(config.desc + "\n"
+                        + activity.getResources().getString(R.string.compatible_chip)
+                        + ChipInfo.type.valueOf(config.chip).getDescription(activity))
+                .setPositiveButton(R.string.confirm, (dialog, which) -> {
+                    if (which == DialogInterface.BUTTON_POSITIVE) {
+                        dialog.dismiss();
+                        waiting_import.show();
+                        new Thread(() -> {
+                            boolean error;
+                            try {
+                                error = config.compact
+                                        ? decodeAndWriteData(config.compactConfig)
+                                        : decodeAndWriteData(config.chip, config.freq, config.volt);
+                            } catch (Exception e) {
+                                error = true;
+                            }
+                            boolean failed = error;
+                            activity.runOnUiThread(() -> {
+                                waiting_import.dismiss();
+                                if (!failed) {
+                                    Toast.makeText(activity, R.string.success_import, Toast.LENGTH_SHORT).show();
+                                    if (activity instanceof MainActivity) {
+                                        ((MainActivity) activity).notifyGpuTableChanged();
+                                    }
+                                } else
+                                    Toast.makeText(activity, R.string.failed_incompatible, Toast.LENGTH_LONG).show();
+                            });
+                        }).start();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .create().show();
+    }
+
     // Public method for importing from data string (used by history)
     public static void importFromData(Activity activity, String data) {
         new showDecodeDialog(activity, data).start();
@@ -382,10 +667,11 @@ public class TableIO {
                 waiting_import.show();
             });
             try {
-                BufferedReader bufferedReader = new BufferedReader(
-                        new InputStreamReader(activity.getContentResolver().openInputStream(uri)));
-                new showDecodeDialog(activity, bufferedReader.readLine()).start();
-                bufferedReader.close();
+                // Streamed, so a wrong or broken file is turned down after reading just its start
+                InputStream in = activity.getContentResolver().openInputStream(uri);
+                if (in == null)
+                    throw new IOException();
+                new showDecodeDialog(activity, new BufferedInputStream(in)).start();
             } catch (Exception e) {
                 activity.runOnUiThread(() -> Toast.makeText(activity,
                         R.string.unable_get_target_file, Toast.LENGTH_SHORT).show());
@@ -393,6 +679,144 @@ public class TableIO {
         }
     }
 
+    /**
+     * Outcome of checking one file of a bulk import: the config if it can be
+     * applied, otherwise what is wrong with it.
+     */
+    private static class BulkResult {
+        final String name;
+        ConfigReader config;
+        String problem;
+
+        BulkResult(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class importFromFiles extends MainActivity.fileWorker {
+        Activity activity;
+
+        public importFromFiles(Activity activity) {
+            this.activity = activity;
+        }
+
+        public void run() {
+            if (uris.isEmpty())
+                return;
+            activity.runOnUiThread(() -> {
+                waiting_import.show();
+            });
+            List<BulkResult> results = checkAll(activity, uris);
+            activity.runOnUiThread(() -> {
+                waiting_import.dismiss();
+                showBulkResults(activity, results);
+            });
+        }
+    }
+
+    /**
+     * Read and check all files side by side on a pool as wide as the CPU, so
+     * checking many takes about as long as checking the largest one.
+     *
+     * @return one result per file, in the given order
+     */
+    private static List<BulkResult> checkAll(Activity activity, List<Uri> uris) {
+        List<Callable<BulkResult>> tasks = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            tasks.add(() -> checkConfig(activity, uri));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(uris.size(), Runtime.getRuntime().availableProcessors()));
+        List<BulkResult> results = new ArrayList<>(uris.size());
+        try {
+            List<Future<BulkResult>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    BulkResult result = new BulkResult(uris.get(i).getLastPathSegment());
+                    result.problem = activity.getString(R.string.bulk_import_unreadable);
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    private static BulkResult checkConfig(Activity activity, Uri uri) {
+        BulkResult result = new BulkResult(getDisplayName(activity, uri));
+        try (ConfigReader reader = new ConfigReader(openFile(activity, uri))) {
+            reader.readHeader();
+            if (!ChipInfo.which.isEquivalentTo(ChipInfo.type.valueOf(reader.chip))) {
+                result.problem = activity.getString(R.string.bulk_import_incompatible);
+                return result;
+            }
+            reader.readTables();
+            boolean hasVolt = reader.compact ? reader.compactConfig.oppFrequencies != null : reader.volt != null;
+            if (!ChipInfo.which.ignoreVoltTable && !hasVolt)
+                throw new IOException("No volt table");
+            ConfigValidator.Problem problem = ConfigValidator.check(ChipInfo.which, reader.compact
+                    ? ConfigValidator.frequencies(reader.compactConfig.bins)
+                    : ConfigValidator.frequencies(reader.freq));
+            if (problem != null) {
+                result.problem = activity.getString(problem.messageRes, problem.args);
+            } else {
+                result.config = reader;
+            }
+        } catch (Exception e) {
+            result.problem = activity.getString(R.string.bulk_import_unreadable);
+        }
+        return result;
+    }
+
+    private static InputStream openFile(Activity activity, Uri uri) throws IOException {
+        InputStream in = activity.getContentResolver().openInputStream(uri);
+        if (in == null)
+            throw new IOException("Unable to open " + uri);
+        return new BufferedInputStream(in);
+    }
+
+    private static String getDisplayName(Activity activity, Uri uri) {
+        try (Cursor cursor = activity.getContentResolver().query(uri,
+                new String[] { OpenableColumns.DISPLAY_NAME }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && cursor.getString(0) != null)
+                return cursor.getString(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return uri.getLastPathSegment();
+    }
+
+    private static void showBulkResults(Activity activity, List<BulkResult> results) {
+        int usable = 0;
+        CharSequence[] items = new CharSequence[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            BulkResult result = results.get(i);
+            if (result.config != null) {
+                usable++;
+                items[i] = "\u2713 " + result.name + "\n" + result.config.desc;
+            } else {
+                items[i] = "\u2717 " + result.name + "\n" + result.problem;
+            }
+        }
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(activity)
+                .setTitle(activity.getString(R.string.bulk_import_result_title, usable, results.size()))
+                .setItems(items, (dialog, which) -> {
+                    BulkResult result = results.get(which);
+                    if (result.config == null) {
+                        Toast.makeText(activity, R.string.bulk_import_not_applicable, Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    confirmAndApply(activity, result.config);
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .create().show();
+    }
+
     private static void generateView(Activity activity, LinearLayout page) {
         // Back navigation handled by OnBackPressedDispatcher in MainActivity
         // No custom callback needed - system back works correctly
@@ -437,6 +861,11 @@ public class TableIO {
                 activity.getResources().getString(R.string.backup_image),
                 activity.getResources().getString(R.string.backup_image_desc),
                 canExport));
+        items.add(new ActionCardAdapter.ActionItem(
+                R.drawable.ic_import_modern,
+                activity.getResources().getString(R.string.bulk_import),
+                activity.getResources().getString(R.string.bulk_import_msg),
+                canExport));
 
         ActionCardAdapter adapter = new ActionCardAdapter(items);
         adapter.setOnItemClickListener(new ActionCardAdapter.OnItemClickListener() {
@@ -490,6 +919,8 @@ public class TableIO {
                             })
                             .setNegativeButton(R.string.cancel, null)
                             .create().show();
+                } else if (position == 7) {
+                    MainActivity.runWithFilePaths(activity, new importFromFiles(activity));
                 }
             }
         });
@@ -0,0 +1,126 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Runs one conversion task per DTB index across all CPU cores.
+ * Indices are striped across per-worker queues up front and a worker that
+ * drains its own queue steals from the tail of the others, so a few large
+ * DTBs cannot leave the remaining cores idle. A failing index never stops
+ * the rest of the batch, the failures are collected and reported together.
+ */
+public class DtbConversionScheduler {
+
+    @FunctionalInterface
+    public interface Task {
+        void convert(int index) throws Exception;
+    }
+
+    public static class Result {
+        private final Map<Integer, Throwable> failures;
+
+        Result(Map<Integer, Throwable> failures) {
+            this.failures = failures;
+        }
+
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @return failed indices in ascending order
+         */
+        public List<Integer> getFailedIndices() {
+            return new ArrayList<>(failures.keySet());
+        }
+
+        public Throwable getError(int index) {
+            return failures.get(index);
+        }
+    }
+
+    private DtbConversionScheduler() {
+    }
+
+    public static int defaultWorkerCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Run the task for the given DTB indices, e.g. only the blobs whose chip
+     * type turned out to be supported.
+     */
+    public static Result run(List<Integer> indices, Task task) throws InterruptedException {
+        return run(indices, defaultWorkerCount(), task);
+    }
+
+    public static Result run(List<Integer> indices, int workers, Task task) throws InterruptedException {
+        Map<Integer, Throwable> failures = Collections.synchronizedMap(new TreeMap<>());
+        int count = indices.size();
+        workers = Math.max(1, Math.min(workers, count));
+        if (count == 0) {
+            return new Result(failures);
+        }
+
+        List<ConcurrentLinkedDeque<Integer>> queues = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            queues.add(new ConcurrentLinkedDeque<>());
+        }
+        for (int i = 0; i < count; i++) {
+            queues.get(i % workers).addLast(indices.get(i));
+        }
+
+        Thread[] threads = new Thread[workers];
+        for (int w = 0; w < workers; w++) {
+            final int self = w;
+            threads[w] = new Thread(() -> {
+                Integer index;
+                while (!Thread.currentThread().isInterrupted()
+                        && (index = next(queues, self)) != null) {
+                    try {
+                        task.convert(index);
+                    } catch (Exception e) {
+                        failures.put(index, e);
+                    }
+                }
+            }, "dtb-convert-" + w);
+            threads[w].start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            // Nothing is taken from the queues once they are empty, so the
+            // workers stop after the DTB they are converting right now
+            for (ConcurrentLinkedDeque<Integer> queue : queues) {
+                queue.clear();
+            }
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        return new Result(failures);
+    }
+
+    private static Integer next(List<ConcurrentLinkedDeque<Integer>> queues, int self) {
+        Integer index = queues.get(self).pollFirst();
+        if (index != null) {
+            return index;
+        }
+        for (int offset = 1; offset < queues.size(); offset++) {
+            index = queues.get((self + offset) % queues.size()).pollLast();
+            if (index != null) {
+                return index;
+            }
+        }
+        return null;
+    }
+}
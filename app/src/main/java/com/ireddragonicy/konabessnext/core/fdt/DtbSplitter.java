@@ -0,0 +1,95 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a concatenated dtb/kernel_dtb image into N.dtb chunks without
+ * copying the image onto the Java heap: the source is memory-mapped, the
+ * magic is compared as a 32-bit int and chunks are written with transferTo.
+ */
+public class DtbSplitter {
+
+    private DtbSplitter() {
+    }
+
+    /**
+     * Split a whole file into {@code outDir/0.dtb ... outDir/(n-1).dtb}.
+     *
+     * @return number of blobs written
+     */
+    public static int split(File source, File outDir) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(source, "r");
+                FileChannel channel = raf.getChannel()) {
+            return split(channel, 0, channel.size(), outDir);
+        }
+    }
+
+    /**
+     * Split the region [offset, offset + length) of an open channel. Used both
+     * for standalone dtb files and for the DTB section inside a boot image.
+     */
+    public static int split(FileChannel channel, long offset, long length, File outDir) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("DTB region too large: " + length);
+        }
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        List<Integer> offsets = findOffsets(region);
+
+        for (int i = 0; i < offsets.size(); i++) {
+            int start = offsets.get(i);
+            int end = (i + 1 < offsets.size()) ? offsets.get(i + 1) : (int) length;
+            try (FileOutputStream out = new FileOutputStream(new File(outDir, i + ".dtb"))) {
+                transferFully(channel, offset + start, end - start, out.getChannel());
+            }
+        }
+        return offsets.size();
+    }
+
+    /**
+     * Find the start of every blob in the buffer. A candidate only counts when
+     * its header's totalsize is sane and stays inside the buffer; the scan then
+     * jumps over the whole blob.
+     */
+    public static List<Integer> findOffsets(ByteBuffer source) {
+        ByteBuffer buf = source.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int base = source.position();
+        int limit = source.remaining();
+        List<Integer> offsets = new ArrayList<>();
+        int i = 0;
+
+        while (i + FdtReader.FDT_HEADER_SIZE <= limit) {
+            if (buf.getInt(base + i) == FdtReader.FDT_MAGIC) {
+                int size = buf.getInt(base + i + 4);
+                if (size >= FdtReader.FDT_HEADER_SIZE && size <= limit - i) {
+                    offsets.add(i);
+                    i += size;
+                    continue;
+                }
+            }
+            i++;
+        }
+
+        return offsets;
+    }
+
+    private static void transferFully(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new IOException("Short write while splitting DTB");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Parser for the DTS subset produced by dtc and by our editors: /dts-v1/,
+ * /memreserve/, nodes, labels, string/cell/byte values, /bits/ and
+ * parenthesized integer expressions. Anything that needs symbol resolution
+ * (phandle references, /delete-node/, includes) is rejected with an
+ * IOException so callers can fall back to the dtc binary.
+ */
+public class DtsSourceParser {
+    private final String src;
+    private int pos;
+
+    private DtsSourceParser(String source) {
+        this.src = source;
+    }
+
+    public static FdtTree parse(File file) throws IOException {
+        return parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1));
+    }
+
+    public static FdtTree parse(String source) throws IOException {
+        return new DtsSourceParser(source).parseTree();
+    }
+
+    private FdtTree parseTree() throws IOException {
+        FdtTree tree = new FdtTree();
+        boolean sawRoot = false;
+
+        while (true) {
+            skipBlanks();
+            if (pos >= src.length()) {
+                break;
+            }
+            if (src.startsWith("/dts-v1/", pos)) {
+                pos += 8;
+                expect(';');
+            } else if (src.startsWith("/memreserve/", pos)) {
+                pos += 12;
+                long address = parseLiteralOrExpression(64);
+                long size = parseLiteralOrExpression(64);
+                expect(';');
+                tree.memReserve.add(new long[] { address, size });
+            } else if (src.charAt(pos) == '/' && peekAfterSlashIsBrace()) {
+                pos++;
+                parseNodeBody(tree.root);
+                sawRoot = true;
+            } else if (isNameChar(src.charAt(pos))) {
+                // Top-level label ("lbl: / { ... }")
+                readName();
+                skipBlanks();
+                expect(':');
+            } else {
+                throw error("Unsupported top-level construct");
+            }
+        }
+
+        if (!sawRoot) {
+            throw error("Missing root node");
+        }
+        return tree;
+    }
+
+    private boolean peekAfterSlashIsBrace() {
+        int i = pos + 1;
+        while (i < src.length() && Character.isWhitespace(src.charAt(i))) {
+            i++;
+        }
+        return i < src.length() && src.charAt(i) == '{';
+    }
+
+    private void parseNodeBody(FdtNode node) throws IOException {
+        skipBlanks();
+        expect('{');
+        while (true) {
+            skipBlanks();
+            if (pos >= src.length()) {
+                throw error("Unterminated node " + node.name);
+            }
+            char c = src.charAt(pos);
+            if (c == '}') {
+                pos++;
+                expect(';');
+                return;
+            }
+            if (c == '/') {
+                throw error("Unsupported directive");
+            }
+
+            String name = readName();
+            skipBlanks();
+            if (pos >= src.length()) {
+                throw error("Unexpected end of source");
+            }
+            c = src.charAt(pos);
+            if (c == ':') {
+                // Label definition, nothing to emit into the blob
+                pos++;
+                continue;
+            }
+            if (c == '{') {
+                FdtNode child = node.getChild(name);
+                if (child == null) {
+                    child = new FdtNode(name);
+                    node.children.add(child);
+                }
+                parseNodeBody(child);
+            } else if (c == '=') {
+                pos++;
+                setProperty(node, name, parseValue());
+            } else if (c == ';') {
+                pos++;
+                setProperty(node, name, new byte[0]);
+            } else {
+                throw error("Unexpected '" + c + "' after " + name);
+            }
+        }
+    }
+
+    private static void setProperty(FdtNode node, String name, byte[] value) {
+        // A redefinition replaces the earlier value in place, like dtc does
+        FdtProperty existing = node.getProperty(name);
+        if (existing != null) {
+            existing.value = value;
+        } else {
+            node.properties.add(new FdtProperty(name, value));
+        }
+    }
+
+    private byte[] parseValue() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        while (true) {
+            skipBlanks();
+            if (pos >= src.length()) {
+                throw error("Unterminated property value");
+            }
+            char c = src.charAt(pos);
+            if (c == '"') {
+                parseString(out);
+            } else if (c == '<') {
+                parseCells(out, 32);
+            } else if (c == '[') {
+                parseBytes(out);
+            } else if (src.startsWith("/bits/", pos)) {
+                pos += 6;
+                int bits = (int) parseLiteralOrExpression(32);
+                if (bits != 8 && bits != 16 && bits != 32 && bits != 64) {
+                    throw error("Invalid /bits/ width " + bits);
+                }
+                skipBlanks();
+                parseCells(out, bits);
+            } else if (c == '&') {
+                throw error("Phandle references need dtc");
+            } else {
+                throw error("Unexpected '" + c + "' in property value");
+            }
+
+            skipBlanks();
+            if (pos < src.length() && src.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            expect(';');
+            return out.toByteArray();
+        }
+    }
+
+    private void parseString(ByteArrayOutputStream out) throws IOException {
+        pos++; // opening quote
+        while (true) {
+            if (pos >= src.length()) {
+                throw error("Unterminated string");
+            }
+            char c = src.charAt(pos++);
+            if (c == '"') {
+                break;
+            }
+            out.write(c == '\\' ? parseEscape() : c);
+        }
+        out.write(0);
+    }
+
+    private void parseCells(ByteArrayOutputStream out, int bits) throws IOException {
+        expect('<');
+        while (true) {
+            skipBlanks();
+            if (pos >= src.length()) {
+                throw error("Unterminated cell list");
+            }
+            char c = src.charAt(pos);
+            if (c == '>') {
+                pos++;
+                return;
+            }
+            if (c == '&') {
+                throw error("Phandle references need dtc");
+            }
+            long value = parseLiteralOrExpression(bits);
+            for (int shift = bits - 8; shift >= 0; shift -= 8) {
+                out.write((int) (value >>> shift) & 0xFF);
+            }
+        }
+    }
+
+    private void parseBytes(ByteArrayOutputStream out) throws IOException {
+        pos++; // '['
+        while (true) {
+            skipBlanks();
+            if (pos >= src.length()) {
+                throw error("Unterminated byte string");
+            }
+            if (src.charAt(pos) == ']') {
+                pos++;
+                return;
+            }
+            if (pos + 1 >= src.length()) {
+                throw error("Truncated byte string");
+            }
+            int hi = Character.digit(src.charAt(pos), 16);
+            int lo = Character.digit(src.charAt(pos + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw error("Invalid byte in byte string");
+            }
+            out.write((hi << 4) | lo);
+            pos += 2;
+        }
+    }
+
+    // ========================================================================
+    // Integers and expressions
+    // ========================================================================
+
+    private long parseLiteralOrExpression(int bits) throws IOException {
+        skipBlanks();
+        long value;
+        boolean literal = pos < src.length() && src.charAt(pos) != '(';
+        value = literal ? parsePrimary() : parseParenthesized();
+        if (bits < 64) {
+            long mask = (1L << bits) - 1;
+            // Literals must fit; expression results are truncated like in dtc
+            if (literal && (value & ~mask) != 0) {
+                throw error("Integer literal out of range");
+            }
+            value &= mask;
+        }
+        return value;
+    }
+
+    private long parseParenthesized() throws IOException {
+        expect('(');
+        long value = parseTernary();
+        skipBlanks();
+        expect(')');
+        return value;
+    }
+
+    private long parseTernary() throws IOException {
+        long condition = parseBinary(0);
+        skipBlanks();
+        if (pos < src.length() && src.charAt(pos) == '?') {
+            pos++;
+            long whenTrue = parseTernary();
+            skipBlanks();
+            expect(':');
+            long whenFalse = parseTernary();
+            return condition != 0 ? whenTrue : whenFalse;
+        }
+        return condition;
+    }
+
+    // Binary operators from lowest to highest precedence
+    private static final String[][] OPERATORS = {
+            { "||" }, { "&&" }, { "|" }, { "^" }, { "&" },
+            { "==", "!=" }, { "<=", ">=", "<", ">" }, { "<<", ">>" },
+            { "+", "-" }, { "*", "/", "%" }
+    };
+
+    private long parseBinary(int level) throws IOException {
+        if (level == OPERATORS.length) {
+            return parseUnary();
+        }
+        long left = parseBinary(level + 1);
+        while (true) {
+            skipBlanks();
+            String op = matchOperator(OPERATORS[level]);
+            if (op == null) {
+                return left;
+            }
+            pos += op.length();
+            long right = parseBinary(level + 1);
+            left = apply(op, left, right);
+        }
+    }
+
+    private String matchOperator(String[] candidates) {
+        for (String op : candidates) {
+            if (!src.startsWith(op, pos)) {
+                continue;
+            }
+            // Do not mistake "||" for "|", "<<" for "<" and so on
+            if (op.length() == 1 && pos + 1 < src.length()) {
+                char next = src.charAt(pos + 1);
+                if ((op.equals("|") && next == '|') || (op.equals("&") && next == '&')
+                        || (op.equals("<") && (next == '<' || next == '='))
+                        || (op.equals(">") && (next == '>' || next == '='))) {
+                    continue;
+                }
+            }
+            return op;
+        }
+        return null;
+    }
+
+    private long apply(String op, long a, long b) throws IOException {
+        switch (op) {
+            case "||":
+                return (a != 0 || b != 0) ? 1 : 0;
+            case "&&":
+                return (a != 0 && b != 0) ? 1 : 0;
+            case "|":
+                return a | b;
+            case "^":
+                return a ^ b;
+            case "&":
+                return a & b;
+            case "==":
+                return a == b ? 1 : 0;
+            case "!=":
+                return a != b ? 1 : 0;
+            case "<=":
+                return Long.compareUnsigned(a, b) <= 0 ? 1 : 0;
+            case ">=":
+                return Long.compareUnsigned(a, b) >= 0 ? 1 : 0;
+            case "<":
+                return Long.compareUnsigned(a, b) < 0 ? 1 : 0;
+            case ">":
+                return Long.compareUnsigned(a, b) > 0 ? 1 : 0;
+            case "<<":
+                return a << b;
+            case ">>":
+                return a >>> b;
+            case "+":
+                return a + b;
+            case "-":
+                return a - b;
+            case "*":
+                return a * b;
+            case "/":
+                if (b == 0)
+                    throw error("Division by zero");
+                return Long.divideUnsigned(a, b);
+            case "%":
+                if (b == 0)
+                    throw error("Division by zero");
+                return Long.remainderUnsigned(a, b);
+            default:
+                throw error("Unknown operator " + op);
+        }
+    }
+
+    private long parseUnary() throws IOException {
+        skipBlanks();
+        if (pos >= src.length()) {
+            throw error("Unexpected end of expression");
+        }
+        char c = src.charAt(pos);
+        switch (c) {
+            case '-':
+                pos++;
+                return -parseUnary();
+            case '~':
+                pos++;
+                return ~parseUnary();
+            case '!':
+                pos++;
+                return parseUnary() == 0 ? 1 : 0;
+            case '(':
+                return parseParenthesized();
+            default:
+                return parsePrimary();
+        }
+    }
+
+    private long parsePrimary() throws IOException {
+        skipBlanks();
+        if (pos >= src.length()) {
+            throw error("Expected a number");
+        }
+        if (src.charAt(pos) == '\'') {
+            pos++;
+            char c = src.charAt(pos++);
+            int value = c == '\\' ? parseEscape() : c;
+            expect('\'');
+            return value;
+        }
+
+        int start = pos;
+        int radix = 10;
+        if (src.startsWith("0x", pos) || src.startsWith("0X", pos)) {
+            radix = 16;
+            pos += 2;
+            start = pos;
+        } else if (src.charAt(pos) == '0' && pos + 1 < src.length()
+                && Character.digit(src.charAt(pos + 1), 8) >= 0) {
+            radix = 8;
+            pos++;
+            start = pos;
+        }
+        while (pos < src.length() && Character.digit(src.charAt(pos), radix) >= 0) {
+            pos++;
+        }
+        if (pos == start) {
+            if (radix == 10) {
+                throw error("Expected a number");
+            }
+            if (radix == 16) {
+                throw error("Malformed hex literal");
+            }
+        }
+        long value;
+        try {
+            value = Long.parseUnsignedLong(src.substring(start, pos), radix);
+        } catch (NumberFormatException e) {
+            throw error("Integer literal out of range");
+        }
+        // C style suffixes (U, L, UL, ULL)
+        while (pos < src.length() && "uUlL".indexOf(src.charAt(pos)) >= 0) {
+            pos++;
+        }
+        return value;
+    }
+
+    // ========================================================================
+    // Lexing helpers
+    // ========================================================================
+
+    private int parseEscape() throws IOException {
+        if (pos >= src.length()) {
+            throw error("Truncated escape sequence");
+        }
+        char c = src.charAt(pos++);
+        switch (c) {
+            case 'a':
+                return 7;
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'v':
+                return 11;
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'x': {
+                int value = 0;
+                int digits = 0;
+                while (digits < 2 && pos < src.length() && Character.digit(src.charAt(pos), 16) >= 0) {
+                    value = (value << 4) | Character.digit(src.charAt(pos++), 16);
+                    digits++;
+                }
+                if (digits == 0) {
+                    throw error("Empty \\x escape");
+                }
+                return value;
+            }
+            default:
+                if (c >= '0' && c <= '7') {
+                    int value = c - '0';
+                    int digits = 1;
+                    while (digits < 3 && pos < src.length()
+                            && src.charAt(pos) >= '0' && src.charAt(pos) <= '7') {
+                        value = (value << 3) | (src.charAt(pos++) - '0');
+                        digits++;
+                    }
+                    return value & 0xFF;
+                }
+                // \\, \", \' and unknown escapes map to the character itself
+                return c;
+        }
+    }
+
+    private String readName() throws IOException {
+        int start = pos;
+        while (pos < src.length() && isNameChar(src.charAt(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            throw error("Expected a node or property name");
+        }
+        return src.substring(start, pos);
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == ',' || c == '.' || c == '_' || c == '+' || c == '*'
+                || c == '#' || c == '?' || c == '@' || c == '-';
+    }
+
+    private void skipBlanks() {
+        while (pos < src.length()) {
+            char c = src.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (src.startsWith("//", pos)) {
+                int end = src.indexOf('\n', pos);
+                pos = end < 0 ? src.length() : end + 1;
+            } else if (src.startsWith("/*", pos)) {
+                int end = src.indexOf("*/", pos + 2);
+                pos = end < 0 ? src.length() : end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        skipBlanks();
+        if (pos >= src.length() || src.charAt(pos) != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private IOException error(String message) {
+        int line = 1;
+        for (int i = 0; i < pos && i < src.length(); i++) {
+            if (src.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new IOException("DTS line " + line + ": " + message);
+    }
+}
@@ -0,0 +1,197 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Emits DTS source for an {@link FdtTree} in exactly the layout produced by
+ * the bundled "dtc -I dtb -O dts" (DTC 1.4.4), so the text based editors keep
+ * seeing the lines they were written against.
+ */
+public class DtsSourceWriter {
+
+    private DtsSourceWriter() {
+    }
+
+    public static void write(FdtTree tree, File target) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(target), StandardCharsets.ISO_8859_1), 64 * 1024)) {
+            write(tree, writer);
+        }
+    }
+
+    public static String toSource(FdtTree tree) {
+        StringBuilder sb = new StringBuilder();
+        appendSource(tree, sb);
+        return sb.toString();
+    }
+
+    public static void write(FdtTree tree, Writer writer) throws IOException {
+        StringBuilder sb = new StringBuilder(64 * 1024);
+        appendSource(tree, sb);
+        writer.append(sb);
+    }
+
+    private static void appendSource(FdtTree tree, StringBuilder sb) {
+        sb.append("/dts-v1/;\n\n");
+        for (long[] entry : tree.memReserve) {
+            sb.append("/memreserve/\t")
+                    .append(hex16(entry[0])).append(' ')
+                    .append(hex16(entry[1])).append(";\n");
+        }
+        appendNode(tree.root, 0, sb);
+    }
+
+    private static void appendNode(FdtNode node, int level, StringBuilder sb) {
+        indent(sb, level);
+        sb.append(node.name.isEmpty() ? "/" : node.name).append(" {\n");
+        for (FdtProperty property : node.properties) {
+            indent(sb, level + 1);
+            sb.append(property.name);
+            appendValue(property.value, sb);
+        }
+        for (FdtNode child : node.children) {
+            sb.append('\n');
+            appendNode(child, level + 1, sb);
+        }
+        indent(sb, level);
+        sb.append("};\n");
+    }
+
+    private static void appendValue(byte[] value, StringBuilder sb) {
+        int len = value.length;
+        if (len == 0) {
+            sb.append(";\n");
+            return;
+        }
+
+        int notString = 0;
+        int nul = 0;
+        for (byte b : value) {
+            if (!isStringChar(b)) {
+                notString++;
+            }
+            if (b == 0) {
+                nul++;
+            }
+        }
+
+        sb.append(" = ");
+        // Same type guess as dtc's write_propval()
+        if (value[len - 1] == 0 && notString == 0 && nul < (len - nul)) {
+            appendStrings(value, sb);
+        } else if (len % 4 == 0) {
+            appendCells(value, sb);
+        } else {
+            appendBytes(value, sb);
+        }
+        sb.append(";\n");
+    }
+
+    private static void appendStrings(byte[] value, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < value.length - 1; i++) {
+            char c = (char) (value[i] & 0xFF);
+            switch (c) {
+                case 7:
+                    sb.append("\\a");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case 11:
+                    sb.append("\\v");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case 0:
+                    sb.append("\", \"");
+                    break;
+                default:
+                    if (isPrint(c)) {
+                        sb.append(c);
+                    } else {
+                        sb.append("\\x").append(hex2(c));
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendCells(byte[] value, StringBuilder sb) {
+        sb.append('<');
+        for (int i = 0; i < value.length; i += 4) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            long cell = ((long) (value[i] & 0xFF) << 24)
+                    | ((value[i + 1] & 0xFF) << 16)
+                    | ((value[i + 2] & 0xFF) << 8)
+                    | (value[i + 3] & 0xFF);
+            sb.append("0x").append(Long.toHexString(cell));
+        }
+        sb.append('>');
+    }
+
+    private static void appendBytes(byte[] value, StringBuilder sb) {
+        sb.append('[');
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(hex2(value[i] & 0xFF));
+        }
+        sb.append(']');
+    }
+
+    private static boolean isPrint(int c) {
+        return c >= 0x20 && c < 0x7F;
+    }
+
+    // Same set as dtc's isstring(): printable, NUL and "\a\f\n\r\t\v", but not '\b'
+    private static boolean isStringChar(byte b) {
+        int c = b & 0xFF;
+        return isPrint(c) || c == 0 || c == 7 || (c >= 9 && c <= 13);
+    }
+
+    private static String hex2(int value) {
+        String hex = Integer.toHexString(value);
+        return hex.length() < 2 ? "0" + hex : hex;
+    }
+
+    private static String hex16(long value) {
+        String hex = Long.toHexString(value);
+        StringBuilder padded = new StringBuilder("0x");
+        for (int i = hex.length(); i < 16; i++) {
+            padded.append('0');
+        }
+        return padded.append(hex).toString();
+    }
+
+    private static void indent(StringBuilder sb, int level) {
+        for (int i = 0; i < level; i++) {
+            sb.append('\t');
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A device tree node with its properties and child nodes, kept in blob order.
+ * The root node has an empty name.
+ */
+public class FdtNode {
+    public final String name;
+    public final ArrayList<FdtProperty> properties = new ArrayList<>();
+    public final ArrayList<FdtNode> children = new ArrayList<>();
+
+    public FdtNode(String name) {
+        this.name = name;
+    }
+
+    public FdtProperty getProperty(String propertyName) {
+        for (FdtProperty property : properties) {
+            if (property.name.equals(propertyName)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience accessor for string properties such as "model".
+     *
+     * @return first string of the property, or null if absent or not a string
+     */
+    public String getString(String propertyName) {
+        FdtProperty property = getProperty(propertyName);
+        return property != null ? property.asString() : null;
+    }
+
+    public FdtNode getChild(String childName) {
+        for (FdtNode child : children) {
+            if (child.name.equals(childName)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Depth-first search for the first node with the given name.
+     */
+    public FdtNode findNode(String nodeName) {
+        if (name.equals(nodeName)) {
+            return this;
+        }
+        for (FdtNode child : children) {
+            FdtNode found = child.findNode(nodeName);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    public List<FdtNode> getChildren() {
+        return children;
+    }
+
+    public List<FdtProperty> getProperties() {
+        return properties;
+    }
+}
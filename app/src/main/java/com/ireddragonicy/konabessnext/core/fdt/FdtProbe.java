@@ -0,0 +1,38 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.IOException;
+
+/**
+ * Root level identity of a DTB blob (model and compatible) read without
+ * decoding the rest of the tree. Further lookups stay lazy and go back to the
+ * mapped blob.
+ */
+public class FdtProbe {
+    private final FdtReader reader;
+    private final String model;
+    private final String[] compatible;
+
+    FdtProbe(FdtReader reader, String model, String[] compatible) {
+        this.reader = reader;
+        this.model = model;
+        this.compatible = compatible;
+    }
+
+    /**
+     * Root "model" property, or an empty string when missing.
+     */
+    public String getModel() {
+        return model != null ? model : "";
+    }
+
+    public String[] getCompatible() {
+        return compatible;
+    }
+
+    /**
+     * Whether any node in the blob is named exactly {@code name}.
+     */
+    public boolean hasNode(String name) throws IOException {
+        return reader.containsNode(name);
+    }
+}
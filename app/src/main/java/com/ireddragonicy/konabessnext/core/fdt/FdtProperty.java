@@ -0,0 +1,75 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single device tree property: a name and its raw big-endian value bytes.
+ */
+public class FdtProperty {
+    public final String name;
+    public byte[] value;
+
+    public FdtProperty(String name, byte[] value) {
+        this.name = name;
+        this.value = value != null ? value : new byte[0];
+    }
+
+    public int length() {
+        return value.length;
+    }
+
+    /**
+     * Decode the value as a NUL-terminated string list and return the first
+     * entry, or null when the value is not terminated.
+     */
+    public String asString() {
+        if (value.length == 0 || value[value.length - 1] != 0) {
+            return null;
+        }
+        int end = 0;
+        while (value[end] != 0) {
+            end++;
+        }
+        return new String(value, 0, end, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decode the value as a list of NUL-terminated strings (e.g. "compatible").
+     */
+    public String[] asStringList() {
+        if (value.length == 0 || value[value.length - 1] != 0) {
+            return new String[0];
+        }
+        int count = 0;
+        for (byte b : value) {
+            if (b == 0) {
+                count++;
+            }
+        }
+        String[] result = new String[count];
+        int start = 0;
+        int index = 0;
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == 0) {
+                result[index++] = new String(value, start, i - start, StandardCharsets.ISO_8859_1);
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the 32-bit cell at the given index.
+     */
+    public long getCell(int index) {
+        int offset = index * 4;
+        return ((long) (value[offset] & 0xFF) << 24)
+                | ((value[offset + 1] & 0xFF) << 16)
+                | ((value[offset + 2] & 0xFF) << 8)
+                | (value[offset + 3] & 0xFF);
+    }
+
+    public int getCellCount() {
+        return value.length / 4;
+    }
+}
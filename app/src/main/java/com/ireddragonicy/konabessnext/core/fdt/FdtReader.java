@@ -0,0 +1,326 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Pure-Java parser for flattened device tree (DTB) blobs.
+ * Reads the header, memory reservation map, structure block and strings block
+ * straight into an {@link FdtTree} so no dtc process or DTS text is needed.
+ */
+public class FdtReader {
+    public static final int FDT_MAGIC = 0xD00DFEED;
+    public static final int FDT_HEADER_SIZE = 40;
+
+    static final int FDT_BEGIN_NODE = 0x1;
+    static final int FDT_END_NODE = 0x2;
+    static final int FDT_PROP = 0x3;
+    static final int FDT_NOP = 0x4;
+    static final int FDT_END = 0x9;
+
+    // Oldest layout we understand (v16 dropped full path names in BEGIN_NODE)
+    private static final int MIN_SUPPORTED_VERSION = 16;
+
+    private final ByteBuffer buf;
+    private final int base;
+    private final int totalSize;
+    private final int structOffset;
+    private final int structEnd;
+    private final int stringsOffset;
+    private final int stringsEnd;
+    // Property names repeat heavily; decode each strings-block entry once
+    private final HashMap<Integer, String> names = new HashMap<>();
+
+    private FdtReader(ByteBuffer source) throws IOException {
+        buf = source.duplicate().order(ByteOrder.BIG_ENDIAN);
+        base = source.position();
+        int available = source.remaining();
+
+        if (available < FDT_HEADER_SIZE || buf.getInt(base) != FDT_MAGIC) {
+            throw new IOException("Not a DTB blob");
+        }
+        totalSize = buf.getInt(base + 4);
+        if (totalSize < FDT_HEADER_SIZE || totalSize > available) {
+            throw new IOException("Invalid DTB totalsize: " + totalSize);
+        }
+        int version = buf.getInt(base + 20);
+        if (version < MIN_SUPPORTED_VERSION) {
+            throw new IOException("Unsupported DTB version: " + version);
+        }
+
+        structOffset = buf.getInt(base + 8);
+        stringsOffset = buf.getInt(base + 12);
+        int stringsSize = buf.getInt(base + 32);
+        int structSize = version >= 17 ? buf.getInt(base + 36) : totalSize - structOffset;
+
+        structEnd = checkedEnd(structOffset, structSize);
+        stringsEnd = checkedEnd(stringsOffset, stringsSize);
+    }
+
+    private int checkedEnd(int offset, int size) throws IOException {
+        if (offset < 0 || size < 0 || (long) offset + size > totalSize) {
+            throw new IOException("DTB block out of bounds");
+        }
+        return offset + size;
+    }
+
+    /**
+     * Parse a complete blob starting at the buffer's current position.
+     * The buffer's position and limit are left untouched.
+     */
+    public static FdtTree read(ByteBuffer source) throws IOException {
+        return new FdtReader(source).readTree();
+    }
+
+    /**
+     * Memory-map a DTB file and parse it without copying the blob to the heap.
+     */
+    public static FdtTree read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read only the root node's own properties (model, compatible) and stop at
+     * the first child node. Used to classify a blob before deciding whether it
+     * is worth decoding completely.
+     */
+    public static FdtProbe probe(ByteBuffer source) throws IOException {
+        return new FdtReader(source).readProbe();
+    }
+
+    public static FdtProbe probe(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            return probe(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private FdtProbe readProbe() throws IOException {
+        String model = null;
+        String[] compatible = new String[0];
+        int offset = structOffset;
+        boolean inRoot = false;
+
+        while (offset < structEnd) {
+            int token = buf.getInt(base + offset);
+            offset += 4;
+
+            if (token == FDT_NOP) {
+                continue;
+            }
+            if (token == FDT_BEGIN_NODE && !inRoot) {
+                inRoot = true;
+                offset = align4(findNul(offset, structEnd) + 1);
+                continue;
+            }
+            if (token != FDT_PROP || !inRoot) {
+                // First child, end of root or END: root properties are complete
+                break;
+            }
+
+            int length = buf.getInt(base + offset);
+            int nameOffset = buf.getInt(base + offset + 4);
+            offset += 8;
+            if (length < 0 || offset + length > structEnd) {
+                throw new IOException("Malformed property in DTB");
+            }
+            String name = readString(nameOffset);
+            if ("model".equals(name)) {
+                model = new FdtProperty(name, readBytes(offset, length)).asString();
+            } else if ("compatible".equals(name)) {
+                compatible = new FdtProperty(name, readBytes(offset, length)).asStringList();
+            }
+            offset = align4(offset + length);
+        }
+
+        if (!inRoot) {
+            throw new IOException("DTB has no root node");
+        }
+        return new FdtProbe(this, model, compatible);
+    }
+
+    /**
+     * Walk the structure block looking for a node with exactly this name,
+     * skipping property values without copying them.
+     */
+    boolean containsNode(String name) throws IOException {
+        byte[] target = name.getBytes(StandardCharsets.ISO_8859_1);
+        int offset = structOffset;
+
+        while (offset < structEnd) {
+            int token = buf.getInt(base + offset);
+            offset += 4;
+
+            switch (token) {
+                case FDT_BEGIN_NODE: {
+                    int nameEnd = findNul(offset, structEnd);
+                    if (nameEquals(offset, nameEnd, target)) {
+                        return true;
+                    }
+                    offset = align4(nameEnd + 1);
+                    break;
+                }
+                case FDT_PROP: {
+                    int length = buf.getInt(base + offset);
+                    if (length < 0) {
+                        throw new IOException("Malformed property in DTB");
+                    }
+                    offset = align4(offset + 8 + length);
+                    break;
+                }
+                case FDT_END_NODE:
+                case FDT_NOP:
+                    break;
+                case FDT_END:
+                    return false;
+                default:
+                    throw new IOException("Unknown DTB token: " + token);
+            }
+        }
+        return false;
+    }
+
+    private boolean nameEquals(int start, int end, byte[] target) {
+        if (end - start != target.length) {
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            if (buf.get(base + start + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private FdtTree readTree() throws IOException {
+        FdtTree tree = new FdtTree();
+        tree.version = buf.getInt(base + 20);
+        tree.lastCompVersion = buf.getInt(base + 24);
+        tree.bootCpuidPhys = buf.getInt(base + 28);
+        readMemReserve(tree);
+
+        int offset = structOffset;
+        FdtNode[] stack = new FdtNode[16];
+        int depth = -1;
+
+        while (offset < structEnd) {
+            int token = buf.getInt(base + offset);
+            offset += 4;
+
+            switch (token) {
+                case FDT_BEGIN_NODE: {
+                    int nameEnd = findNul(offset, structEnd);
+                    FdtNode node = new FdtNode(readAscii(offset, nameEnd));
+                    offset = align4(nameEnd + 1);
+                    if (depth < 0) {
+                        tree.root = node;
+                    } else {
+                        stack[depth].children.add(node);
+                    }
+                    if (++depth == stack.length) {
+                        FdtNode[] grown = new FdtNode[stack.length * 2];
+                        System.arraycopy(stack, 0, grown, 0, stack.length);
+                        stack = grown;
+                    }
+                    stack[depth] = node;
+                    break;
+                }
+                case FDT_END_NODE:
+                    if (depth < 0) {
+                        throw new IOException("Unbalanced END_NODE in DTB");
+                    }
+                    depth--;
+                    break;
+                case FDT_PROP: {
+                    int length = buf.getInt(base + offset);
+                    int nameOffset = buf.getInt(base + offset + 4);
+                    offset += 8;
+                    if (depth < 0 || length < 0 || offset + length > structEnd) {
+                        throw new IOException("Malformed property in DTB");
+                    }
+                    stack[depth].properties.add(new FdtProperty(readString(nameOffset), readBytes(offset, length)));
+                    offset = align4(offset + length);
+                    break;
+                }
+                case FDT_NOP:
+                    break;
+                case FDT_END:
+                    if (depth != -1) {
+                        throw new IOException("Truncated DTB structure block");
+                    }
+                    return tree;
+                default:
+                    throw new IOException("Unknown DTB token: " + token);
+            }
+        }
+        throw new IOException("Missing END token in DTB");
+    }
+
+    private void readMemReserve(FdtTree tree) throws IOException {
+        int offset = buf.getInt(base + 16);
+        while (true) {
+            if (offset < FDT_HEADER_SIZE || offset + 16 > totalSize) {
+                throw new IOException("DTB reserve map out of bounds");
+            }
+            long address = buf.getLong(base + offset);
+            long size = buf.getLong(base + offset + 8);
+            if (address == 0 && size == 0) {
+                return;
+            }
+            tree.memReserve.add(new long[] { address, size });
+            offset += 16;
+        }
+    }
+
+    private String readString(int nameOffset) throws IOException {
+        String cached = names.get(nameOffset);
+        if (cached != null) {
+            return cached;
+        }
+        int start = stringsOffset + nameOffset;
+        if (nameOffset < 0 || start >= stringsEnd) {
+            throw new IOException("DTB string offset out of bounds");
+        }
+        String name = readAscii(start, findNul(start, stringsEnd));
+        names.put(nameOffset, name);
+        return name;
+    }
+
+    private int findNul(int offset, int limit) throws IOException {
+        for (int i = offset; i < limit; i++) {
+            if (buf.get(base + i) == 0) {
+                return i;
+            }
+        }
+        throw new IOException("Unterminated string in DTB");
+    }
+
+    private byte[] readBytes(int offset, int length) {
+        byte[] value = new byte[length];
+        ByteBuffer slice = buf.duplicate();
+        slice.position(base + offset);
+        slice.get(value);
+        return value;
+    }
+
+    private String readAscii(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(base + start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    static int align4(int offset) {
+        return (offset + 3) & ~3;
+    }
+}
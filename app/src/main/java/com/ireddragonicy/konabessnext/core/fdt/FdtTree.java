@@ -0,0 +1,23 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.util.ArrayList;
+
+/**
+ * In-memory form of one flattened device tree blob: the header fields we need
+ * to round-trip, the memory reservation map and the node tree.
+ */
+public class FdtTree {
+    public int version = 17;
+    public int lastCompVersion = 16;
+    public int bootCpuidPhys;
+    public final ArrayList<long[]> memReserve = new ArrayList<>();
+    public FdtNode root = new FdtNode("");
+
+    /**
+     * Root "model" property, or an empty string when missing.
+     */
+    public String getModel() {
+        String model = root.getString("model");
+        return model != null ? model : "";
+    }
+}
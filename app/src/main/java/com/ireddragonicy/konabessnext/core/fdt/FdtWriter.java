@@ -0,0 +1,178 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Serializes an {@link FdtTree} into a version 17 flattened device tree blob
+ * laid out the same way "dtc -O dtb" does: header, 8-byte aligned memory
+ * reservation map, structure block and a deduplicated strings block.
+ */
+public class FdtWriter {
+    private static final int FDT_VERSION = 17;
+    private static final int FDT_LAST_COMP_VERSION = 16;
+
+    private final BlockBuffer struct = new BlockBuffer(64 * 1024);
+    private byte[] strings = new byte[4 * 1024];
+    private int stringsLength;
+    private final HashMap<String, Integer> stringOffsets = new HashMap<>();
+
+    private FdtWriter() {
+    }
+
+    public static byte[] toBlob(FdtTree tree) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try {
+            write(tree, out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write one complete blob to the stream. The blob is assembled in memory
+     * first because the header needs the final block sizes, so nothing is
+     * written if serialization fails.
+     *
+     * @return number of bytes written
+     */
+    public static int write(FdtTree tree, OutputStream out) throws IOException {
+        return new FdtWriter().writeBlob(tree, out);
+    }
+
+    private int writeBlob(FdtTree tree, OutputStream out) throws IOException {
+        writeNode(tree.root);
+        struct.putInt(FdtReader.FDT_END);
+
+        int reserveOffset = (FdtReader.FDT_HEADER_SIZE + 7) & ~7;
+        int reserveSize = (tree.memReserve.size() + 1) * 16;
+        int structOffset = reserveOffset + reserveSize;
+        int stringsOffset = structOffset + struct.length;
+        int totalSize = stringsOffset + stringsLength;
+
+        BlockBuffer head = new BlockBuffer(reserveOffset + reserveSize);
+        head.putInt(FdtReader.FDT_MAGIC);
+        head.putInt(totalSize);
+        head.putInt(structOffset);
+        head.putInt(stringsOffset);
+        head.putInt(reserveOffset);
+        head.putInt(FDT_VERSION);
+        head.putInt(FDT_LAST_COMP_VERSION);
+        head.putInt(tree.bootCpuidPhys);
+        head.putInt(stringsLength);
+        head.putInt(struct.length);
+        for (long[] entry : tree.memReserve) {
+            head.putLong(entry[0]);
+            head.putLong(entry[1]);
+        }
+        head.putLong(0);
+        head.putLong(0);
+
+        out.write(head.data, 0, head.length);
+        out.write(struct.data, 0, struct.length);
+        out.write(strings, 0, stringsLength);
+        return totalSize;
+    }
+
+    private void writeNode(FdtNode node) {
+        struct.putInt(FdtReader.FDT_BEGIN_NODE);
+        struct.putPadded(node.name.getBytes(StandardCharsets.ISO_8859_1), true);
+        for (FdtProperty property : node.properties) {
+            struct.putInt(FdtReader.FDT_PROP);
+            struct.putInt(property.value.length);
+            struct.putInt(stringOffset(property.name));
+            struct.putPadded(property.value, false);
+        }
+        for (FdtNode child : node.children) {
+            writeNode(child);
+        }
+        struct.putInt(FdtReader.FDT_END_NODE);
+    }
+
+    /**
+     * Same lookup as dtc's stringtable_insert(): reuse any existing entry
+     * (including the tail of a longer name) before appending a new one.
+     */
+    private int stringOffset(String name) {
+        Integer cached = stringOffsets.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+        int offset = findSuffix(bytes);
+        if (offset < 0) {
+            offset = stringsLength;
+            int needed = stringsLength + bytes.length + 1;
+            if (needed > strings.length) {
+                strings = Arrays.copyOf(strings, Math.max(needed, strings.length * 2));
+            }
+            System.arraycopy(bytes, 0, strings, stringsLength, bytes.length);
+            strings[stringsLength + bytes.length] = 0;
+            stringsLength = needed;
+        }
+        stringOffsets.put(name, offset);
+        return offset;
+    }
+
+    private int findSuffix(byte[] bytes) {
+        int last = stringsLength - bytes.length - 1;
+        outer: for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < bytes.length; j++) {
+                if (strings[i + j] != bytes[j]) {
+                    continue outer;
+                }
+            }
+            if (strings[i + bytes.length] == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Minimal growable big-endian byte buffer.
+     */
+    private static class BlockBuffer {
+        byte[] data;
+        int length;
+
+        BlockBuffer(int capacity) {
+            data = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + extra, data.length * 2));
+            }
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            data[length++] = (byte) (value >>> 24);
+            data[length++] = (byte) (value >>> 16);
+            data[length++] = (byte) (value >>> 8);
+            data[length++] = (byte) value;
+        }
+
+        void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        void putPadded(byte[] bytes, boolean terminate) {
+            int size = bytes.length + (terminate ? 1 : 0);
+            int padded = FdtReader.align4(size);
+            ensure(padded);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            // Terminator and alignment padding are zero
+            Arrays.fill(data, length + bytes.length, length + padded, (byte) 0);
+            length += padded;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ireddragonicy.konabessnext.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a GPU power level bin containing multiple frequency levels.
@@ -13,6 +14,10 @@ public class Bin {
     public ArrayList<String> header;
     public ArrayList<Level> levels;
 
+    // Last undo snapshot of this bin, and for a snapshot the live bin it belongs to
+    private Bin snapshot;
+    private Bin origin;
+
     public Bin() {
         this.header = new ArrayList<>();
         this.levels = new ArrayList<>();
@@ -83,6 +88,74 @@ public class Bin {
         return new Bin(this);
     }
 
+    /**
+     * Frozen copy of this bin for undo history. Unchanged levels are shared
+     * with earlier snapshots, and if nothing in the bin changed the previous
+     * snapshot itself is returned. The returned bin must never be modified.
+     */
+    public Bin snapshot() {
+        if (snapshot != null && snapshot.id == id && snapshot.header.equals(header)
+                && snapshot.levels.size() == levels.size()) {
+            int i = 0;
+            while (i < levels.size() && levels.get(i).snapshot() == snapshot.levels.get(i)) {
+                i++;
+            }
+            if (i == levels.size()) {
+                return snapshot;
+            }
+        }
+        Bin frozen = new Bin(id);
+        frozen.header = snapshot != null && snapshot.header.equals(header)
+                ? snapshot.header
+                : new ArrayList<>(header);
+        frozen.levels = new ArrayList<>(levels.size());
+        for (Level level : levels) {
+            frozen.levels.add(level.snapshot());
+        }
+        frozen.origin = this;
+        snapshot = frozen;
+        return frozen;
+    }
+
+    /**
+     * Live bin for a snapshot, reusing the bin and levels it was taken from
+     * where they have not changed since.
+     *
+     * @param used identity set of the live levels handed out so far for the
+     *             same state, so no level object ends up in two places
+     */
+    public static Bin fromSnapshot(Bin snapshot, Set<Level> used) {
+        Bin origin = snapshot.origin;
+        if (origin != null && origin.snapshot == snapshot && origin.snapshot() == snapshot
+                && noneUsed(origin.levels, used)) {
+            used.addAll(origin.levels);
+            return origin;
+        }
+        Bin live = new Bin(snapshot.id);
+        live.header = new ArrayList<>(snapshot.header);
+        live.levels = new ArrayList<>(snapshot.levels.size());
+        for (Level frozen : snapshot.levels) {
+            Level level = Level.fromSnapshot(frozen);
+            if (!used.add(level)) {
+                level = new Level(frozen);
+                used.add(level);
+            }
+            live.levels.add(level);
+        }
+        live.snapshot = snapshot;
+        snapshot.origin = live;
+        return live;
+    }
+
+    private static boolean noneUsed(List<Level> levels, Set<Level> used) {
+        for (Level level : levels) {
+            if (used.contains(level)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -1,7 +1,12 @@
 package com.ireddragonicy.konabessnext.model;
 
+import com.ireddragonicy.konabessnext.core.DtsPieceTable;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a snapshot of the GPU table editor state for undo/redo.
@@ -9,15 +14,18 @@ import java.util.List;
  */
 public class EditorState {
     // Public fields for direct access (GpuTableEditor compatibility)
-    public ArrayList<String> linesInDts;
+    public List<String> linesInDts;
     public ArrayList<Bin> binsSnapshot;
     public int binPosition;
+    // Edit version of the editor when the snapshot was taken, compared with
+    // the saved version to tell whether restoring it leaves unsaved changes
+    public long editVersion;
 
     /**
      * Default constructor for GpuTableEditor usage.
      */
     public EditorState() {
-        this.linesInDts = new ArrayList<>();
+        this.linesInDts = new DtsPieceTable();
         this.binsSnapshot = new ArrayList<>();
         this.binPosition = -1;
     }
@@ -26,8 +34,8 @@ public class EditorState {
      * Constructor with parameters for ViewModel usage.
      */
     public EditorState(List<String> linesInDts, List<Bin> bins, int binPosition) {
-        this.linesInDts = linesInDts != null ? new ArrayList<>(linesInDts) : new ArrayList<>();
-        this.binsSnapshot = deepCopyBins(bins);
+        this.linesInDts = DtsPieceTable.copyOf(linesInDts);
+        this.binsSnapshot = snapshotBins(bins);
         this.binPosition = binPosition;
     }
 
@@ -45,15 +53,38 @@ public class EditorState {
     }
 
     /**
-     * Create a deep copy of bins list.
+     * Snapshot a bins list for undo history. Bins and levels that did not
+     * change since the previous snapshot are shared with it, so a history
+     * entry only costs memory for what was edited.
      */
-    public static ArrayList<Bin> deepCopyBins(List<Bin> source) {
+    public static ArrayList<Bin> snapshotBins(List<Bin> source) {
+        ArrayList<Bin> snapshot = new ArrayList<>();
         if (source == null)
-            return new ArrayList<>();
-        ArrayList<Bin> copy = new ArrayList<>();
+            return snapshot;
         for (Bin bin : source) {
-            copy.add(bin.copy());
+            snapshot.add(bin.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Live, editable bins for a snapshot. Objects that have not changed since
+     * the snapshot was taken are reused instead of copied.
+     */
+    public static ArrayList<Bin> restoreBins(List<Bin> snapshot) {
+        ArrayList<Bin> bins = new ArrayList<>();
+        if (snapshot == null)
+            return bins;
+        Set<Level> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Bin> usedBins = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Bin frozen : snapshot) {
+            Bin bin = Bin.fromSnapshot(frozen, used);
+            if (!usedBins.add(bin)) {
+                bin = new Bin(frozen);
+                usedBins.add(bin);
+            }
+            bins.add(bin);
         }
-        return copy;
+        return bins;
     }
 }
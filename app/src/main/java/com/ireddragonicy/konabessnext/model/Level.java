@@ -1,23 +1,123 @@
 package com.ireddragonicy.konabessnext.model;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Represents a single GPU power level containing DTS property lines.
+ * Represents a single GPU power level.
  * Used by MVVM architecture for GPU table editing.
+ * <p>
+ * The well-known single cell properties are kept as primitives, every other
+ * line is kept as is, all in their original order. {@link #lines} is a view
+ * that turns the properties back into DTS lines when it is read.
  */
 public class Level {
+    /**
+     * Properties stored as numbers instead of lines.
+     */
+    public enum Property {
+        GPU_FREQ("qcom,gpu-freq"),
+        LEVEL("qcom,level"),
+        CX_LEVEL("qcom,cx-level"),
+        BUS_MIN("qcom,bus-min"),
+        BUS_MAX("qcom,bus-max"),
+        BUS_FREQ("qcom,bus-freq"),
+        ACD_LEVEL("qcom,acd-level");
+
+        private static final Property[] ALL = values();
+
+        public final String key;
+
+        Property(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long[] values = new long[Property.ALL.length];
+    // Bit per property: stored, and written as hex
+    private int present;
+    private int hex;
+    // In line order, either a Property or an unknown line
+    private final ArrayList<Object> entries;
+
+    // Bumped on every change, lets undo snapshots share an unchanged level
+    private int version;
+    private Level snapshot;
+    private int snapshotVersion;
+    // Live level a snapshot was taken from or restored into
+    private Level origin;
+
     // Public field for direct access
-    public ArrayList<String> lines;
+    public final List<String> lines = new LineView();
 
     public Level() {
-        this.lines = new ArrayList<>();
+        this.entries = new ArrayList<>();
     }
 
     // Deep copy constructor
     public Level(Level other) {
-        this.lines = new ArrayList<>(other.lines);
+        System.arraycopy(other.values, 0, this.values, 0, values.length);
+        this.present = other.present;
+        this.hex = other.hex;
+        this.entries = new ArrayList<>(other.entries);
+    }
+
+    public boolean has(Property property) {
+        return (present & (1 << property.ordinal())) != 0;
+    }
+
+    /**
+     * @return the value of the property, or -1 if the level does not have it
+     */
+    public long getValue(Property property) {
+        return has(property) ? values[property.ordinal()] : -1;
+    }
+
+    /**
+     * Change a property, adding it at the end if the level does not have it.
+     * An existing line keeps its number format.
+     */
+    public void setValue(Property property, long value) {
+        if (!has(property)) {
+            present |= 1 << property.ordinal();
+            hex |= 1 << property.ordinal();
+            entries.add(property);
+        }
+        values[property.ordinal()] = value;
+        version++;
+    }
+
+    /**
+     * Append a property line with the given number format. Fails if the
+     * level already has the property.
+     */
+    public void addValue(Property property, long value, boolean asHex) {
+        if (has(property)) {
+            throw new IllegalArgumentException("Duplicate " + property.key);
+        }
+        int bit = 1 << property.ordinal();
+        present |= bit;
+        hex = asHex ? hex | bit : hex & ~bit;
+        values[property.ordinal()] = value;
+        entries.add(property);
+        version++;
+    }
+
+    /**
+     * @return the property the line at {@code index} is stored as, or null
+     *         if it is kept as is
+     */
+    public Property getProperty(int index) {
+        Object entry = entries.get(index);
+        return entry instanceof Property ? (Property) entry : null;
+    }
+
+    /**
+     * @return whether the property is written as a hex number
+     */
+    public boolean isHex(Property property) {
+        return (hex & (1 << property.ordinal())) != 0;
     }
 
     public List<String> getLines() {
@@ -25,11 +125,19 @@ public class Level {
     }
 
     public void setLines(List<String> lines) {
-        this.lines = lines != null ? new ArrayList<>(lines) : new ArrayList<>();
+        version++;
+        entries.clear();
+        present = 0;
+        hex = 0;
+        if (lines != null) {
+            for (String line : lines) {
+                addLine(line);
+            }
+        }
     }
 
     public void addLine(String line) {
-        this.lines.add(line);
+        lines.add(line);
     }
 
     public String getLine(int index) {
@@ -46,47 +154,28 @@ public class Level {
     }
 
     public int getLineCount() {
-        return lines.size();
+        return entries.size();
     }
 
     /**
-     * Get the frequency value from this level's lines.
-     * Looks for "qcom,gpu-freq = <value>;" pattern.
+     * Get the frequency value from "qcom,gpu-freq".
      *
      * @return frequency in Hz, or -1 if not found
      */
     public long getFrequency() {
-        for (String line : lines) {
-            if (line.contains("qcom,gpu-freq")) {
-                try {
-                    String value = line.replaceAll("[^0-9]", "");
-                    return Long.parseLong(value);
-                } catch (NumberFormatException e) {
-                    return -1;
-                }
-            }
-        }
-        return -1;
+        return getValue(Property.GPU_FREQ);
     }
 
     /**
-     * Get the voltage level from this level's lines.
-     * Looks for "qcom,level = <value>;" pattern.
+     * Get the voltage level from "qcom,level", or "qcom,cx-level" on chips
+     * that use that instead.
      *
      * @return voltage level, or -1 if not found
      */
     public int getVoltageLevel() {
-        for (String line : lines) {
-            if (line.contains("qcom,level") && !line.contains("qcom,gpu-freq")) {
-                try {
-                    String value = line.replaceAll("[^0-9]", "");
-                    return Integer.parseInt(value);
-                } catch (NumberFormatException e) {
-                    return -1;
-                }
-            }
-        }
-        return -1;
+        if (has(Property.LEVEL))
+            return (int) values[Property.LEVEL.ordinal()];
+        return (int) getValue(Property.CX_LEVEL);
     }
 
     /**
@@ -96,6 +185,155 @@ public class Level {
         return new Level(this);
     }
 
+    /**
+     * Frozen copy of this level for undo history. The same copy is returned
+     * as long as the level does not change, so history entries share it.
+     * The returned level must never be modified.
+     */
+    public Level snapshot() {
+        if (snapshot == null || snapshotVersion != version) {
+            snapshot = new Level(this);
+            snapshot.origin = this;
+            snapshotVersion = version;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Live level for a snapshot: the level it was taken from if that has not
+     * changed since, otherwise a new copy.
+     */
+    public static Level fromSnapshot(Level snapshot) {
+        Level origin = snapshot.origin;
+        if (origin != null && origin.snapshot == snapshot && origin.snapshotVersion == origin.version) {
+            return origin;
+        }
+        Level live = new Level(snapshot);
+        live.snapshot = snapshot;
+        live.snapshotVersion = live.version;
+        snapshot.origin = live;
+        return live;
+    }
+
+    private String render(Object entry) {
+        if (!(entry instanceof Property)) {
+            return (String) entry;
+        }
+        Property property = (Property) entry;
+        long value = values[property.ordinal()];
+        boolean asHex = (hex & (1 << property.ordinal())) != 0;
+        return property.key + " = <" + (asHex ? "0x" + Long.toHexString(value) : Long.toString(value)) + ">;";
+    }
+
+    /**
+     * Store a line as a typed property if it is exactly what {@link #render}
+     * would write for it and the property is not stored yet, otherwise keep
+     * the line itself.
+     */
+    private Object parse(String line, Object replacing) {
+        for (Property property : Property.ALL) {
+            if (!line.startsWith(property.key)) {
+                continue;
+            }
+            if (has(property) && replacing != property) {
+                return line;
+            }
+            int start = property.key.length();
+            if (!line.startsWith(" = <", start) || !line.endsWith(">;")) {
+                return line;
+            }
+            int from = start + 4;
+            int to = line.length() - 2;
+            boolean asHex = line.startsWith("0x", from);
+            if (asHex) {
+                from += 2;
+            }
+            long value = parseNumber(line, from, to, asHex ? 16 : 10);
+            if (value < 0) {
+                return line;
+            }
+            int bit = 1 << property.ordinal();
+            values[property.ordinal()] = value;
+            present |= bit;
+            hex = asHex ? hex | bit : hex & ~bit;
+            return property;
+        }
+        return line;
+    }
+
+    /**
+     * @return the value, or -1 if the text is not a number in canonical form
+     */
+    private static long parseNumber(String text, int from, int to, int radix) {
+        int length = to - from;
+        if (length <= 0 || length > (radix == 16 ? 15 : 18)) {
+            return -1;
+        }
+        if (length > 1 && text.charAt(from) == '0') {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (radix == 16 && c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return -1;
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    private void release(Object entry) {
+        if (entry instanceof Property) {
+            present &= ~(1 << ((Property) entry).ordinal());
+        }
+    }
+
+    /**
+     * Line based access to the level, as the DTS text would have it.
+     */
+    private class LineView extends AbstractList<String> {
+        @Override
+        public String get(int index) {
+            return render(entries.get(index));
+        }
+
+        @Override
+        public String set(int index, String line) {
+            Object previous = entries.get(index);
+            String old = render(previous);
+            release(previous);
+            entries.set(index, parse(line, previous));
+            version++;
+            return old;
+        }
+
+        @Override
+        public void add(int index, String line) {
+            entries.add(index, parse(line, null));
+            version++;
+        }
+
+        @Override
+        public String remove(int index) {
+            Object previous = entries.remove(index);
+            String old = render(previous);
+            release(previous);
+            version++;
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -103,14 +341,22 @@ public class Level {
         if (o == null || getClass() != o.getClass())
             return false;
         Level level = (Level) o;
-        return lines.equals(level.lines);
+        if (present != level.present || hex != level.hex || !entries.equals(level.entries))
+            return false;
+        for (Property property : Property.ALL) {
+            if (has(property) && values[property.ordinal()] != level.values[property.ordinal()])
+                return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return lines.hashCode();
+        int result = entries.hashCode();
+        for (Property property : Property.ALL) {
+            if (has(property))
+                result = 31 * result + Long.hashCode(values[property.ordinal()]);
+        }
+        return result;
     }
 }
-
-
-
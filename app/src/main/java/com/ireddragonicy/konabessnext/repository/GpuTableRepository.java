@@ -1,15 +1,15 @@
 package com.ireddragonicy.konabessnext.repository;
 
 import com.ireddragonicy.konabessnext.core.ChipInfo;
+import com.ireddragonicy.konabessnext.core.DtsAutoSaver;
+import com.ireddragonicy.konabessnext.core.DtsDocument;
+import com.ireddragonicy.konabessnext.core.DtsPieceTable;
+import com.ireddragonicy.konabessnext.core.GpuTableSnapshot;
 import com.ireddragonicy.konabessnext.core.KonaBessCore;
 import com.ireddragonicy.konabessnext.model.Bin;
+import com.ireddragonicy.konabessnext.model.EditorState;
 import com.ireddragonicy.konabessnext.model.Level;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,113 +21,59 @@ import java.util.List;
  */
 public class GpuTableRepository {
 
-    private List<String> linesInDts;
+    private DtsPieceTable linesInDts;
+    private DtsDocument document;
     private List<Bin> bins;
     private int binPosition;
 
     public GpuTableRepository() {
-        this.linesInDts = new ArrayList<>();
+        this.linesInDts = new DtsPieceTable();
         this.bins = new ArrayList<>();
         this.binPosition = -1;
     }
 
     /**
-     * Initialize by reading DTS file.
+     * Initialize from the shared parsed DTS document.
      */
     public void init() throws IOException {
-        linesInDts = new ArrayList<>();
+        DtsAutoSaver.flush();
+        document = DtsDocument.load(KonaBessCore.dts_path);
+        linesInDts = new DtsPieceTable();
         bins = new ArrayList<>();
         binPosition = -1;
-
-        File file = new File(KonaBessCore.dts_path);
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                linesInDts.add(line);
-            }
-        }
     }
 
     /**
-     * Decode GPU power levels from DTS lines.
+     * Decode GPU power levels from the bin nodes of the document.
      */
     public void decode() throws Exception {
-        int i = -1;
-        String thisLine;
-        int start = -1;
-        int bracket = 0;
-
-        while (++i < linesInDts.size()) {
-            thisLine = linesInDts.get(i).trim();
-
-            // Check for single-bin chip types
-            if (isSingleBinChip() && thisLine.equals("qcom,gpu-pwrlevels {")) {
-                start = i;
-                if (binPosition < 0)
-                    binPosition = i;
-                bracket++;
-                continue;
-            }
-
-            // Check for tuna chip type
-            if (ChipInfo.which == ChipInfo.type.tuna
-                    && thisLine.contains("qcom,gpu-pwrlevels-")
-                    && !thisLine.contains("compatible = ")
-                    && !thisLine.contains("qcom,gpu-pwrlevel-bins")) {
-                start = i;
-                if (binPosition < 0)
-                    binPosition = i;
-                if (bracket != 0)
-                    throw new Exception("Unexpected bracket state");
-                bracket++;
-                continue;
-            }
-
-            // Check for multi-bin chip types
-            if (isMultiBinChip()
-                    && thisLine.contains("qcom,gpu-pwrlevels-")
-                    && !thisLine.contains("compatible = ")) {
-                start = i;
-                if (binPosition < 0)
-                    binPosition = i;
-                if (bracket != 0)
-                    throw new Exception("Unexpected bracket state");
-                bracket++;
-                continue;
-            }
-
-            if (thisLine.contains("{") && start >= 0)
-                bracket++;
-            if (thisLine.contains("}") && start >= 0)
-                bracket--;
-
-            // Multi-bin end detection
-            if (bracket == 0 && start >= 0 && (isMultiBinChip() || ChipInfo.which == ChipInfo.type.tuna)) {
-                int end = i;
-                if (end >= start) {
-                    decodeBin(linesInDts.subList(start, end + 1));
-                    int removedLines = end - start + 1;
-                    linesInDts.subList(start, end + 1).clear();
-                    i -= removedLines;
-                } else {
-                    throw new Exception("Invalid bin range");
-                }
-                start = -1;
-                continue;
-            }
+        String chip = ChipInfo.which.name();
+        GpuTableSnapshot snapshot = GpuTableSnapshot.load(KonaBessCore.dts_path, document, chip);
+        if (snapshot != null) {
+            bins = snapshot.getBins();
+            binPosition = snapshot.getBinPosition();
+            linesInDts = document.linesWithout(snapshot.getNodeStarts(), snapshot.getNodeEnds());
+            return;
+        }
+        List<DtsDocument.Node> binNodes = document.findAll(this::isBinNode);
+        if (isSingleBinChip() && binNodes.size() > 1) {
+            binNodes = binNodes.subList(0, 1);
+        }
+        for (DtsDocument.Node node : binNodes) {
+            if (binPosition < 0)
+                binPosition = node.getStartLine();
+            decodeBin(document.getLines(node));
+        }
+        linesInDts = document.linesWithout(binNodes);
+        GpuTableSnapshot.save(KonaBessCore.dts_path, document, chip, binNodes, binPosition, bins);
+    }
 
-            // Single-bin end detection
-            if (bracket == 0 && start >= 0 && isSingleBinChip()) {
-                int end = i;
-                if (end >= start) {
-                    decodeBin(linesInDts.subList(start, end + 1));
-                    linesInDts.subList(start, end + 1).clear();
-                } else {
-                    throw new Exception("Invalid bin range");
-                }
-                break;
-            }
+    private boolean isBinNode(DtsDocument.Node node) {
+        if (isSingleBinChip()) {
+            return node.getLabel() == null && node.getName().equals("qcom,gpu-pwrlevels");
         }
+        return (isMultiBinChip() || ChipInfo.which == ChipInfo.type.tuna)
+                && node.getName().startsWith("qcom,gpu-pwrlevels-");
     }
 
     private boolean isSingleBinChip() {
@@ -257,37 +203,14 @@ public class GpuTableRepository {
      * Generate complete DTS with table inserted.
      */
     public List<String> generateFullDts() {
-        List<String> result = new ArrayList<>(linesInDts);
-        result.addAll(binPosition, generateTable());
-        return result;
+        return linesInDts.withInserted(binPosition, generateTable());
     }
 
     /**
      * Write DTS to file.
      */
     public void writeOut(List<String> newDts) throws IOException {
-        File file = new File(KonaBessCore.dts_path);
-
-        if (file.exists()) {
-            file.setWritable(true);
-            if (!file.delete()) {
-                throw new IOException("Cannot delete existing file: " + file.getAbsolutePath());
-            }
-        }
-
-        if (!file.createNewFile()) {
-            throw new IOException("Failed to create file: " + file.getAbsolutePath());
-        }
-
-        file.setReadable(true, false);
-        file.setWritable(true, false);
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (String line : newDts) {
-                writer.write(line);
-                writer.newLine();
-            }
-        }
+        DtsAutoSaver.writeNow(KonaBessCore.dts_path, newDts);
     }
 
     // Getters
@@ -305,16 +228,14 @@ public class GpuTableRepository {
 
     // Setters for state restoration
     public void setLinesInDts(List<String> lines) {
-        this.linesInDts = lines != null ? new ArrayList<>(lines) : new ArrayList<>();
+        this.linesInDts = DtsPieceTable.copyOf(lines);
     }
 
+    /**
+     * @param bins bins of an {@link EditorState} snapshot
+     */
     public void setBins(List<Bin> bins) {
-        this.bins = new ArrayList<>();
-        if (bins != null) {
-            for (Bin bin : bins) {
-                this.bins.add(new Bin(bin));
-            }
-        }
+        this.bins = EditorState.restoreBins(bins);
     }
 
     public void setBinPosition(int position) {
@@ -2,6 +2,7 @@ package com.ireddragonicy.konabessnext.ui;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -30,6 +31,7 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import com.ireddragonicy.konabessnext.ui.adapters.ChipsetSelectorAdapter;
 import com.ireddragonicy.konabessnext.ui.adapters.ParamAdapter;
@@ -159,6 +161,8 @@ public class MainActivity extends AppCompatActivity {
 
     public static class fileWorker extends Thread {
         public Uri uri;
+        // Every picked file, more than one with runWithFilePaths
+        public final List<Uri> uris = new ArrayList<>();
     }
 
     private static fileWorker file_worker;
@@ -171,12 +175,32 @@ public class MainActivity extends AppCompatActivity {
         activity.startActivityForResult(intent, 0);
     }
 
+    /**
+     * Like {@link #runWithFilePath}, but lets the user pick several files.
+     */
+    public static void runWithFilePaths(Activity activity, fileWorker what) {
+        MainActivity.file_worker = what;
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        activity.startActivityForResult(intent, 0);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (resultCode == Activity.RESULT_OK) {
-            file_worker.uri = data.getData();
             if (file_worker != null) {
+                file_worker.uri = data.getData();
+                ClipData clipData = data.getClipData();
+                if (clipData != null) {
+                    for (int i = 0; i < clipData.getItemCount(); i++) {
+                        file_worker.uris.add(clipData.getItemAt(i).getUri());
+                    }
+                } else if (data.getData() != null) {
+                    file_worker.uris.add(data.getData());
+                }
                 file_worker.start();
                 file_worker = null;
             }
@@ -297,6 +321,14 @@ public class MainActivity extends AppCompatActivity {
         // Handled by back navigation now
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // The process may be killed from here on, get pending edits on disk
+        // without holding up the main thread
+        GpuTableEditor.flushPendingSaveInBackground(getApplicationContext());
+    }
+
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -479,6 +511,8 @@ public class MainActivity extends AppCompatActivity {
                 });
 
                 try {
+                    if (!GpuTableEditor.flushPendingSave())
+                        throw new IOException("Failed to save the GPU frequency table");
                     KonaBessCore.dts2bootImage(MainActivity.this);
                 } catch (Exception e) {
                     is_err = true;
@@ -594,6 +628,12 @@ public class MainActivity extends AppCompatActivity {
             // progressDialog.dismiss();
 
             MainActivity.this.runOnUiThread(() -> {
+                List<Integer> failedDtbs = KonaBessCore.getFailedDtbIndices();
+                if (!failedDtbs.isEmpty()) {
+                    Toast.makeText(MainActivity.this,
+                            getString(R.string.dtb_convert_partial, failedDtbs.toString()),
+                            Toast.LENGTH_LONG).show();
+                }
                 if (KonaBessCore.dtbs.size() == 0) {
                     // DialogUtil.showError(MainActivity.this, R.string.incompatible_device);
                     notifyPreparationFailed();
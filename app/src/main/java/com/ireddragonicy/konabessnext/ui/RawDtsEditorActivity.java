@@ -27,15 +27,15 @@ import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 
 import com.ireddragonicy.konabessnext.utils.LocaleUtil;
 import com.ireddragonicy.konabessnext.viewmodel.RawDtsEditorViewModel;
 
 import com.ireddragonicy.konabessnext.R;
+import com.ireddragonicy.konabessnext.core.DtsAutoSaver;
+import com.ireddragonicy.konabessnext.core.DtsFileWriter;
 import com.ireddragonicy.konabessnext.core.KonaBessCore;
 
 import androidx.lifecycle.ViewModelProvider;
@@ -234,6 +234,7 @@ public class RawDtsEditorActivity extends AppCompatActivity {
 
         new Thread(() -> {
             try {
+                DtsAutoSaver.flush();
                 StringBuilder content = new StringBuilder();
                 File file = new File(KonaBessCore.dts_path);
 
@@ -281,13 +282,8 @@ public class RawDtsEditorActivity extends AppCompatActivity {
         new Thread(() -> {
             boolean success = false;
             try {
-                File file = new File(KonaBessCore.dts_path);
-                BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-
                 String content = editorContent.getText().toString();
-                writer.write(content);
-
-                writer.close();
+                DtsFileWriter.write(KonaBessCore.dts_path, content);
                 success = true;
 
             } catch (Exception e) {
@@ -35,6 +35,7 @@ public class SettingsActivity extends AppCompatActivity {
     public static final String KEY_THEME = "theme";
     public static final String KEY_COLOR_PALETTE = "color_palette";
     public static final String KEY_AUTO_SAVE_GPU_TABLE = "auto_save_gpu_table";
+    public static final String KEY_COMPACT_EXPORT = "compact_export";
     public static final String KEY_DYNAMIC_COLOR = "dynamic_color";
 
     public static final int FREQ_UNIT_HZ = 0;
@@ -174,6 +175,12 @@ public class SettingsActivity extends AppCompatActivity {
                 getString(R.string.auto_save_gpu_freq_table_desc),
                 isAutoSaveEnabled()));
 
+        items.add(new SettingsAdapter.SettingItem(
+                R.drawable.ic_export_modern,
+                getString(R.string.compact_export),
+                getString(R.string.compact_export_desc),
+                isCompactExportEnabled()));
+
         items.add(new SettingsAdapter.SettingItem(
                 R.drawable.ic_help,
                 getString(R.string.help),
@@ -198,6 +205,8 @@ public class SettingsActivity extends AppCompatActivity {
                 showFreqUnitDialog();
             } else if (item.title.equals(getString(R.string.auto_save_gpu_freq_table))) {
                 toggleAutoSave();
+            } else if (item.title.equals(getString(R.string.compact_export))) {
+                toggleCompactExport();
             } else if (item.title.equals(getString(R.string.help))) {
                 showHelpDialog();
             }
@@ -404,6 +413,18 @@ public class SettingsActivity extends AppCompatActivity {
         return prefs.getBoolean(KEY_AUTO_SAVE_GPU_TABLE, false);
     }
 
+    private void toggleCompactExport() {
+        boolean enabled = !isCompactExportEnabled();
+        prefs.edit().putBoolean(KEY_COMPACT_EXPORT, enabled).apply();
+        recreate();
+        Toast.makeText(this, enabled ? R.string.compact_export_enabled_toast : R.string.compact_export_disabled_toast,
+                Toast.LENGTH_SHORT).show();
+    }
+
+    private boolean isCompactExportEnabled() {
+        return prefs.getBoolean(KEY_COMPACT_EXPORT, false);
+    }
+
     private boolean isDynamicColorEnabled() {
         return prefs.getBoolean(KEY_DYNAMIC_COLOR, true);
     }
@@ -547,6 +568,15 @@ public class SettingsActivity extends AppCompatActivity {
         return prefs.getBoolean(KEY_AUTO_SAVE_GPU_TABLE, false);
     }
 
+    /**
+     * Whether file exports use the compact binary format instead of JSON.
+     * Off by default, as older versions of the app only read JSON.
+     */
+    public static boolean isCompactExportEnabled(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getBoolean(KEY_COMPACT_EXPORT, false);
+    }
+
     private static void applyThemeMode(int theme) {
         int[] modes = {
                 AppCompatDelegate.MODE_NIGHT_FOLLOW_SYSTEM,
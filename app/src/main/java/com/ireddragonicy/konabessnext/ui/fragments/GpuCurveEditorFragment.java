@@ -38,8 +38,8 @@ import com.ireddragonicy.konabessnext.core.GpuVoltEditor;
 import com.ireddragonicy.konabessnext.R;
 import com.ireddragonicy.konabessnext.model.Bin;
 import com.ireddragonicy.konabessnext.model.Level;
-import com.ireddragonicy.konabessnext.utils.DtsHelper;
 import com.ireddragonicy.konabessnext.ui.widget.GpuActionToolbar;
+import com.ireddragonicy.konabessnext.utils.DtsHelper;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -189,30 +189,14 @@ public class GpuCurveEditorFragment extends Fragment implements GpuTableEditor.O
             int entryIndex = size - 1 - i; // Index in our arrays
 
             // Get frequency
-            long freq = 0;
-            for (String line : lvl.lines) {
-                if (line.contains("qcom,gpu-freq")) {
-                    try {
-                        freq = DtsHelper.decode_int_line(line).value;
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    break;
-                }
-            }
+            long freq = Math.max(getValue(lvl, Level.Property.GPU_FREQ), 0);
             float freqMhz = freq / 1_000_000f;
 
             // Get voltage level
-            int voltLevel = 0;
-            for (String line : lvl.lines) {
-                if (line.contains("qcom,level") || line.contains("qcom,cx-level")) {
-                    try {
-                        voltLevel = (int) DtsHelper.decode_int_line(line).value;
-                    } catch (Exception ignored) {
-                    }
-                    break;
-                }
-            }
+            long volt = getValue(lvl, Level.Property.LEVEL);
+            if (volt < 0)
+                volt = getValue(lvl, Level.Property.CX_LEVEL);
+            int voltLevel = (int) Math.max(volt, 0);
             voltageLevels[entryIndex] = voltLevel;
 
             // Use voltage level as X coordinate for proportional spacing
@@ -629,23 +613,14 @@ public class GpuCurveEditorFragment extends Fragment implements GpuTableEditor.O
                         continue;
 
                     Level lvl = finalTargetBin.levels.get(originalIdx);
-                    for (int j = 0; j < lvl.lines.size(); j++) {
-                        String line = lvl.lines.get(j);
-
-                        // Update frequency
-                        if (line.contains("qcom,gpu-freq")) {
-                            String propName = line.substring(0, line.indexOf("=")).trim();
-                            String newLine = propName + " = <0x" + Long.toHexString(newFreqValues[i]) + ">;";
-                            lvl.lines.set(j, newLine);
-                        }
 
-                        // Update voltage level
-                        if ((line.contains("qcom,level") || line.contains("qcom,cx-level"))
-                                && i < newVoltLevels.length) {
-                            String propName = line.substring(0, line.indexOf("=")).trim();
-                            String newLine = propName + " = <0x" + Integer.toHexString(newVoltLevels[i]) + ">;";
-                            lvl.lines.set(j, newLine);
-                        }
+                    // Update frequency
+                    setValue(lvl, Level.Property.GPU_FREQ, newFreqValues[i]);
+
+                    // Update voltage level
+                    if (i < newVoltLevels.length) {
+                        setValue(lvl, Level.Property.LEVEL, newVoltLevels[i]);
+                        setValue(lvl, Level.Property.CX_LEVEL, newVoltLevels[i]);
                     }
                 }
             });
@@ -672,4 +647,47 @@ public class GpuCurveEditorFragment extends Fragment implements GpuTableEditor.O
         loadData();
         refreshChart();
     }
+
+    /**
+     * Value of a level property, also when its line is kept as is (e.g. upper
+     * case hex), or -1 if the level has none.
+     */
+    private static long getValue(Level lvl, Level.Property property) {
+        if (lvl.has(property))
+            return lvl.getValue(property);
+        int index = findRawLine(lvl, property);
+        if (index < 0)
+            return -1;
+        try {
+            return DtsHelper.decode_int_line(lvl.lines.get(index)).value;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Change a property the level has. A line kept as is gets rewritten as
+     * hex, which turns it into a stored property.
+     */
+    private static void setValue(Level lvl, Level.Property property, long value) {
+        if (lvl.has(property)) {
+            lvl.setValue(property, value);
+            return;
+        }
+        int index = findRawLine(lvl, property);
+        if (index >= 0)
+            lvl.lines.set(index, property.key + " = <0x" + Long.toHexString(value) + ">;");
+    }
+
+    private static int findRawLine(Level lvl, Level.Property property) {
+        for (int i = 0; i < lvl.getLineCount(); i++) {
+            if (lvl.getProperty(i) != null)
+                continue;
+            String line = lvl.lines.get(i).trim();
+            if (line.startsWith(property.key) && line.substring(property.key.length()).trim().startsWith("="))
+                return i;
+        }
+        return -1;
+    }
 }
@@ -25,6 +25,7 @@ import com.ireddragonicy.konabessnext.data.KonaBessStr;
 import com.ireddragonicy.konabessnext.R;
 import com.ireddragonicy.konabessnext.ui.SettingsActivity;
 import com.ireddragonicy.konabessnext.ui.adapters.SettingsAdapter;
+import com.ireddragonicy.konabessnext.utils.PipelineMetrics;
 import com.ireddragonicy.konabessnext.viewmodel.SettingsViewModel;
 
 import androidx.lifecycle.ViewModelProvider;
@@ -102,6 +103,19 @@ public class SettingsFragment extends Fragment {
                 getString(R.string.auto_save_gpu_freq_table_desc),
                 isAutoSave));
 
+        items.add(new SettingsAdapter.SettingItem(
+                R.drawable.ic_export_modern,
+                getString(R.string.compact_export),
+                getString(R.string.compact_export_desc),
+                SettingsActivity.isCompactExportEnabled(requireContext())));
+
+        items.add(new SettingsAdapter.SettingItem(
+                R.drawable.ic_schedule,
+                getString(R.string.pipeline_metrics),
+                getString(R.string.pipeline_metrics_desc),
+                getString(R.string.pipeline_metrics_runs,
+                        PipelineMetrics.getRuns(requireContext()).length())));
+
         items.add(new SettingsAdapter.SettingItem(
                 R.drawable.ic_help,
                 getString(R.string.help),
@@ -124,6 +138,10 @@ public class SettingsFragment extends Fragment {
                 showFreqUnitDialog();
             } else if (item.title.equals(getString(R.string.auto_save_gpu_freq_table))) {
                 toggleAutoSave();
+            } else if (item.title.equals(getString(R.string.compact_export))) {
+                toggleCompactExport();
+            } else if (item.title.equals(getString(R.string.pipeline_metrics))) {
+                showPipelineMetricsDialog();
             } else if (item.title.equals(getString(R.string.help))) {
                 showHelpDialog();
             }
@@ -240,6 +258,36 @@ public class SettingsFragment extends Fragment {
                 .create().show();
     }
 
+    private void showPipelineMetricsDialog() {
+        String report = PipelineMetrics.toReport(requireContext());
+        if (report.isEmpty()) {
+            report = getString(R.string.pipeline_metrics_empty);
+        }
+
+        android.widget.TextView message = new android.widget.TextView(requireContext());
+        message.setText(report);
+        message.setTypeface(android.graphics.Typeface.MONOSPACE);
+        message.setTextIsSelectable(true);
+        int padding = (int) (20 * getResources().getDisplayMetrics().density);
+        message.setPadding(padding, padding / 2, padding, 0);
+        android.widget.ScrollView scroll = new android.widget.ScrollView(requireContext());
+        scroll.addView(message);
+
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(requireContext())
+                .setTitle(getString(R.string.pipeline_metrics))
+                .setView(scroll)
+                .setPositiveButton(getString(R.string.close), null)
+                .setNeutralButton(getString(R.string.copy), (dialog, which) -> {
+                    android.content.ClipboardManager clipboard = (android.content.ClipboardManager) requireContext()
+                            .getSystemService(Context.CLIPBOARD_SERVICE);
+                    clipboard.setPrimaryClip(android.content.ClipData.newPlainText(
+                            getString(R.string.pipeline_metrics), PipelineMetrics.toJson(requireContext())));
+                    android.widget.Toast.makeText(requireContext(), getString(R.string.text_copied_to_clipboard),
+                            android.widget.Toast.LENGTH_SHORT).show();
+                })
+                .create().show();
+    }
+
     private void showHelpDialog() {
         new com.google.android.material.dialog.MaterialAlertDialogBuilder(requireContext())
                 .setTitle(getString(R.string.help))
@@ -284,6 +332,17 @@ public class SettingsFragment extends Fragment {
         android.widget.Toast.makeText(requireContext(), message, android.widget.Toast.LENGTH_SHORT).show();
     }
 
+    private void toggleCompactExport() {
+        boolean newState = !SettingsActivity.isCompactExportEnabled(requireContext());
+
+        prefs.edit().putBoolean(SettingsActivity.KEY_COMPACT_EXPORT, newState).apply();
+        requireActivity().recreate();
+
+        String message = newState ? getString(R.string.compact_export_enabled_toast)
+                : getString(R.string.compact_export_disabled_toast);
+        android.widget.Toast.makeText(requireContext(), message, android.widget.Toast.LENGTH_SHORT).show();
+    }
+
     private String getAutoSaveStatusText() {
         boolean isEnabled = prefs.getBoolean(SettingsActivity.KEY_AUTO_SAVE_GPU_TABLE, false);
         return isEnabled ? getString(R.string.common_on) : getString(R.string.common_off);
@@ -17,116 +17,62 @@ public class DtsHelper {
         public String value;
     }
 
-    public static intLine decode_int_line_hz(String line) throws Exception {
-        intLine intLine = new intLine();
-        line = line.trim();
-        int i;
-        for (i = 0; i < line.length(); i++) {
-            if (line.startsWith("=", i)) {
-                break;
-            }
-        }
-        if (i == line.length())
-            throw new Exception();
-        intLine.name = line.substring(0, i);
-        intLine.name = intLine.name.trim();
-
-        String value = line.substring(i + 1);
-        value = value.replace("<0x0 ", "")
-                .replace(">", "")
-                .replace(";", "");
-
-        if (value.contains("0x")) {
-            value = value.replace("0x", "").trim();
-            intLine.value = Long.parseLong(value, 16);
-        } else {
-            value = value.trim();
-            intLine.value = Long.parseLong(value);
-        }
+    private static final ThreadLocal<DtsPropertyParser> PARSER = ThreadLocal.withInitial(DtsPropertyParser::new);
 
-        return intLine;
+    private static DtsPropertyParser parse(String line) throws Exception {
+        DtsPropertyParser parser = PARSER.get();
+        if (!parser.parse(line))
+            throw new Exception();
+        return parser;
     }
 
-    //To handle dtc bug
-    public static int decode_stringed_int(String input) throws Exception {
-        input = input.replace("\"", "")
-                .replace(";", "")
-                .replace("\\a", "\7")
-                .replace("\\b", "\b")
-                .replace("\\f", "\f")
-                .replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\v", "\11")
-                .replace("\\\\", "\\")
-                .replace("\\'", "'")
-                .replace("\\\"", "\"")
-                .trim();
-        char[] chars = input.toCharArray();
-        if (chars.length != 3)
+    public static intLine decode_int_line_hz(String line) throws Exception {
+        DtsPropertyParser parser = parse(line);
+        // opp-hz is a 64-bit value split over two cells
+        if (parser.getType() != DtsPropertyParser.TYPE_CELLS || parser.getCount() < 1 || parser.getCount() > 2)
             throw new Exception();
-        int ret = 0;
-        for (int i = 1; i <= chars.length; i++) {
-            ret += (int) chars[chars.length - i] * Math.pow(256, i);
-        }
-        return ret;
+        intLine intLine = new intLine();
+        intLine.name = parser.getName();
+        intLine.value = parser.getU64();
+        return intLine;
     }
 
     public static intLine decode_int_line(String line) throws Exception {
+        DtsPropertyParser parser = parse(line);
         intLine intLine = new intLine();
-        line = line.trim();
-        int i;
-        for (i = 0; i < line.length(); i++) {
-            if (line.startsWith("=", i)) {
-                break;
-            }
-        }
-        if (i == line.length())
-            throw new Exception();
-        intLine.name = line.substring(0, i);
-        intLine.name = intLine.name.trim();
-
-        String value = line.substring(i + 1);
-        if (value.contains("\"")) {
-            intLine.value = decode_stringed_int(value);
-            return intLine;
-        }
-
-        value = value.replace("<", "")
-                .replace(">", "")
-                .replace(";", "");
-
-        if (value.contains("0x")) {
-            value = value.replace("0x", "").trim();
-            intLine.value = Long.parseLong(value, 16);
+        intLine.name = parser.getName();
+        if (parser.getType() == DtsPropertyParser.TYPE_STRING) {
+            intLine.value = stringed_int(parser);
+        } else if (parser.getType() == DtsPropertyParser.TYPE_CELLS && parser.getCount() == 1) {
+            intLine.value = parser.getValue(0);
         } else {
-            value = value.trim();
-            intLine.value = Long.parseLong(value);
+            throw new Exception();
         }
-
         return intLine;
     }
 
-    public static hexLine decode_hex_line(String line) throws Exception {
-        hexLine hexLine = new hexLine();
-        line = line.trim();
-        int i;
-        for (i = 0; i < line.length(); i++) {
-            if (line.startsWith("=", i)) {
-                break;
-            }
-        }
-        if (i == line.length())
+    // dtc prints a cell like 0x41424300 as the string "ABC"
+    private static long stringed_int(DtsPropertyParser parser) throws Exception {
+        if (parser.getCount() != 4 || parser.getValue(3) != 0)
             throw new Exception();
-        hexLine.name = line.substring(0, i);
-        hexLine.name = hexLine.name.trim();
+        return parser.getValue(0) << 24 | parser.getValue(1) << 16 | parser.getValue(2) << 8;
+    }
 
-        String value = line.substring(i + 1);
-        value = value.replace("<", "")
-                .replace(">", "")
-                .replace(";", "").trim();
+    public static hexLine decode_hex_line(String line) throws Exception {
+        // Raw text only, so this also works for values the parser rejects (e.g. phandles)
+        int i = line.indexOf('=');
+        if (i < 0)
+            throw new Exception();
+        hexLine hexLine = new hexLine();
+        hexLine.name = line.substring(0, i).trim();
 
-        hexLine.value = value;
+        StringBuilder value = new StringBuilder(line.length() - i);
+        for (i++; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != '<' && c != '>' && c != ';')
+                value.append(c);
+        }
+        hexLine.value = value.toString().trim();
 
         return hexLine;
     }
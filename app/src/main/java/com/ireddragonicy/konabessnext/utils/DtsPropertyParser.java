@@ -0,0 +1,434 @@
+package com.ireddragonicy.konabessnext.utils;
+
+/**
+ * Cursor based parser for a single DTS property line such as
+ * {@code name = <0x0 0x2faf0800>;}, {@code name = "a", "b";},
+ * {@code name = [00 01];} or {@code name = /bits/ 8 <0x1 0x2>;}.
+ * <p>
+ * The line is read in place and every value is written into one reusable
+ * long[]: cells as their value, bytes as 0-255 and strings as their
+ * characters followed by a 0 terminator, the same bytes dtc would emit.
+ * Parsing does not allocate unless the buffer has to grow. An instance is
+ * not thread safe, keep one per thread.
+ */
+public class DtsPropertyParser {
+    public static final int TYPE_EMPTY = 0;
+    public static final int TYPE_CELLS = 1;
+    public static final int TYPE_BYTES = 2;
+    public static final int TYPE_STRING = 3;
+    public static final int TYPE_MIXED = 4;
+
+    private CharSequence text;
+    private int pos;
+    private int end;
+
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    private long[] values;
+    private int count;
+    private int type;
+    private int bits;
+
+    public DtsPropertyParser() {
+        this(new long[16]);
+    }
+
+    /**
+     * @param buffer initial value buffer, replaced by a larger one if a
+     *               property does not fit
+     */
+    public DtsPropertyParser(long[] buffer) {
+        this.values = buffer.length > 0 ? buffer : new long[16];
+    }
+
+    public boolean parse(CharSequence line) {
+        return parse(line, 0, line.length());
+    }
+
+    /**
+     * Parse {@code line[start, end)}.
+     *
+     * @return false if it is not a well formed property
+     */
+    public boolean parse(CharSequence line, int start, int end) {
+        this.text = line;
+        this.pos = start;
+        this.end = end;
+        this.count = 0;
+        this.type = TYPE_EMPTY;
+        this.bits = 32;
+
+        skipSpace();
+        nameStart = pos;
+        while (pos < end && !isSpace(text.charAt(pos)) && text.charAt(pos) != '=' && text.charAt(pos) != ';') {
+            pos++;
+        }
+        nameEnd = pos;
+        if (nameEnd == nameStart) {
+            return false;
+        }
+        skipSpace();
+        if (pos >= end) {
+            return false;
+        }
+        if (text.charAt(pos) == ';') {
+            valueStart = valueEnd = pos;
+            return atEnd(pos + 1);
+        }
+        if (text.charAt(pos) != '=') {
+            return false;
+        }
+        pos++;
+        valueStart = pos;
+
+        while (true) {
+            skipSpace();
+            if (pos >= end) {
+                return false;
+            }
+            char c = text.charAt(pos);
+            boolean ok;
+            if (c == '<' || c == '/') {
+                ok = parseCells();
+            } else if (c == '[') {
+                ok = parseBytes();
+            } else if (c == '"') {
+                ok = parseString();
+            } else {
+                return false;
+            }
+            if (!ok) {
+                return false;
+            }
+            skipSpace();
+            if (pos < end && text.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            if (pos < end && text.charAt(pos) == ';') {
+                valueEnd = pos;
+                return atEnd(pos + 1);
+            }
+            return false;
+        }
+    }
+
+    private boolean parseCells() {
+        int groupBits = 32;
+        if (text.charAt(pos) == '/') {
+            if (!matches("/bits/")) {
+                return false;
+            }
+            pos += 6;
+            skipSpace();
+            long value = parseNumber();
+            if (value != 8 && value != 16 && value != 32 && value != 64) {
+                return false;
+            }
+            groupBits = (int) value;
+            skipSpace();
+            if (pos >= end || text.charAt(pos) != '<') {
+                return false;
+            }
+        }
+        pos++;
+        setType(TYPE_CELLS);
+        bits = groupBits;
+        long mask = groupBits == 64 ? -1L : (1L << groupBits) - 1;
+        while (true) {
+            skipSpace();
+            if (pos >= end) {
+                return false;
+            }
+            char c = text.charAt(pos);
+            if (c == '>') {
+                pos++;
+                return true;
+            }
+            long value;
+            if (c == '\'') {
+                pos++;
+                value = parseChar('\'');
+                if (value < 0 || pos >= end || text.charAt(pos) != '\'') {
+                    return false;
+                }
+                pos++;
+            } else if (c >= '0' && c <= '9') {
+                int before = pos;
+                value = parseNumber();
+                if (pos == before || (pos < end && !isSpace(text.charAt(pos)) && text.charAt(pos) != '>')) {
+                    return false;
+                }
+            } else {
+                // Phandle references and expressions are not values we can use
+                return false;
+            }
+            add(value & mask);
+        }
+    }
+
+    private boolean parseBytes() {
+        pos++;
+        setType(TYPE_BYTES);
+        while (true) {
+            skipSpace();
+            if (pos >= end) {
+                return false;
+            }
+            if (text.charAt(pos) == ']') {
+                pos++;
+                return true;
+            }
+            if (pos + 1 >= end) {
+                return false;
+            }
+            int high = hexDigit(text.charAt(pos));
+            int low = hexDigit(text.charAt(pos + 1));
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            add(high << 4 | low);
+            pos += 2;
+        }
+    }
+
+    private boolean parseString() {
+        pos++;
+        setType(TYPE_STRING);
+        while (pos < end) {
+            if (text.charAt(pos) == '"') {
+                pos++;
+                add(0);
+                return true;
+            }
+            long c = parseChar('"');
+            if (c < 0) {
+                return false;
+            }
+            add(c);
+        }
+        return false;
+    }
+
+    /**
+     * Read one possibly escaped character of a string or char literal.
+     *
+     * @return the character, or -1 on a malformed escape
+     */
+    private long parseChar(char quote) {
+        if (pos >= end) {
+            return -1;
+        }
+        char c = text.charAt(pos++);
+        if (c == quote) {
+            return -1;
+        }
+        if (c != '\\') {
+            return c;
+        }
+        if (pos >= end) {
+            return -1;
+        }
+        c = text.charAt(pos++);
+        switch (c) {
+            case 'a':
+                return 7;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'v':
+                return 11;
+            case 'x': {
+                int value = 0;
+                int digits = 0;
+                while (digits < 2 && pos < end && hexDigit(text.charAt(pos)) >= 0) {
+                    value = value << 4 | hexDigit(text.charAt(pos++));
+                    digits++;
+                }
+                return digits == 0 ? -1 : value;
+            }
+            default:
+                if (c >= '0' && c <= '7') {
+                    int value = c - '0';
+                    int digits = 1;
+                    while (digits < 3 && pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '7') {
+                        value = value << 3 | (text.charAt(pos++) - '0');
+                        digits++;
+                    }
+                    return value & 0xFF;
+                }
+                // \\, \', \" and unknown escapes stand for the character itself
+                return c;
+        }
+    }
+
+    /**
+     * C style unsigned integer literal: 0x hex, leading 0 octal, else decimal,
+     * with optional U/L suffixes. Leaves pos unchanged if there is no number.
+     */
+    private long parseNumber() {
+        int start = pos;
+        long value = 0;
+        if (matches("0x") || matches("0X")) {
+            pos += 2;
+            int digits = pos;
+            while (pos < end && hexDigit(text.charAt(pos)) >= 0) {
+                value = value << 4 | hexDigit(text.charAt(pos++));
+            }
+            if (pos == digits) {
+                pos = start;
+                return -1;
+            }
+        } else if (pos < end && text.charAt(pos) == '0') {
+            while (pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '7') {
+                value = value << 3 | (text.charAt(pos++) - '0');
+            }
+        } else {
+            while (pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+                value = value * 10 + (text.charAt(pos++) - '0');
+            }
+            if (pos == start) {
+                return -1;
+            }
+        }
+        while (pos < end && (text.charAt(pos) == 'U' || text.charAt(pos) == 'u'
+                || text.charAt(pos) == 'L' || text.charAt(pos) == 'l')) {
+            pos++;
+        }
+        return value;
+    }
+
+    private void add(long value) {
+        if (count == values.length) {
+            long[] grown = new long[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, count);
+            values = grown;
+        }
+        values[count++] = value;
+    }
+
+    private void setType(int groupType) {
+        type = type == TYPE_EMPTY || type == groupType ? groupType : TYPE_MIXED;
+    }
+
+    private boolean atEnd(int from) {
+        for (int i = from; i < end; i++) {
+            if (!isSpace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(String token) {
+        if (pos + token.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (text.charAt(pos + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipSpace() {
+        while (pos < end && isSpace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'f')
+            return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F')
+            return c - 'A' + 10;
+        return -1;
+    }
+
+    public boolean nameEquals(CharSequence name) {
+        if (nameEnd - nameStart != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(nameStart + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getName() {
+        return text.subSequence(nameStart, nameEnd).toString();
+    }
+
+    /**
+     * Start of the raw value text, right after '='.
+     */
+    public int getValueStart() {
+        return valueStart;
+    }
+
+    /**
+     * End of the raw value text, at the closing ';'.
+     */
+    public int getValueEnd() {
+        return valueEnd;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return cell size of the last cell group, 32 unless set with /bits/
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getValue(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+        }
+        return values[index];
+    }
+
+    /**
+     * The value buffer; only the first {@link #getCount()} entries are valid.
+     */
+    public long[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the first two 32-bit cells as one 64-bit number (e.g. opp-hz),
+     *         or the only cell if there is just one
+     */
+    public long getU64() {
+        if (count == 1) {
+            return values[0];
+        }
+        return values[0] << 32 | (values[1] & 0xFFFFFFFFL);
+    }
+}
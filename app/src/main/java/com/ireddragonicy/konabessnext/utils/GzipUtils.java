@@ -1,52 +1,109 @@
 package com.ireddragonicy.konabessnext.utils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Base64;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class GzipUtils {
+    // Same header GZIPOutputStream writes: magic, deflate, no flags, mtime 0, no extra flags, OS unknown
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
 
-    public static String compress(byte[] bytes) throws IOException {
-        if (bytes == null || bytes.length == 0)
-            throw new IOException();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        GZIPOutputStream gzip;
-        gzip = new GZIPOutputStream(out);
-        gzip.write(bytes);
-        gzip.close();
-        return Base64.getEncoder().encodeToString(out.toByteArray());
+    /**
+     * Stream that gzips what is written to it and writes the Base64 of the
+     * result to {@code out}, without holding any of it in memory. The output
+     * is the same as Base64 of what GZIPOutputStream writes. Closing it
+     * finishes the gzip data, frees the deflater and closes {@code out}.
+     */
+    public static OutputStream compressingStream(OutputStream out) throws IOException {
+        return new Base64GzipOutputStream(out);
     }
 
-    public static String uncompress(String compressedStr) throws IOException {
-        if (compressedStr == null) {
-            return null;
+    /**
+     * Stream that reads what {@link #compressingStream} wrote: the Base64
+     * text from {@code in}, decompressed as it is read, so only as much of
+     * it is decoded as the reader asks for. Characters outside the Base64
+     * alphabet such as line breaks are skipped.
+     */
+    public static InputStream uncompressingStream(InputStream in) throws IOException {
+        return new GZIPInputStream(Base64.getMimeDecoder().wrap(in), 8192);
+    }
+
+    private static class Base64GzipOutputStream extends OutputStream {
+        private final OutputStream base64;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+        private final byte[] single = new byte[1];
+        private boolean closed;
+
+        Base64GzipOutputStream(OutputStream out) throws IOException {
+            this.base64 = Base64.getEncoder().wrap(out);
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                base64.write(GZIP_HEADER);
+            } catch (IOException e) {
+                deflater.end();
+                throw e;
+            }
         }
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ByteArrayInputStream byteArrayInputStream;
-        GZIPInputStream gzipInputStream;
-        byte[] compressed;
-        String decompressed;
-        compressed = Base64.getDecoder().decode(compressedStr);
-        byteArrayInputStream = new ByteArrayInputStream(compressed);
-        gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-
-        byte[] buffer = new byte[1024];
-        int offset;
-        while ((offset = gzipInputStream.read(buffer)) != -1) {
-            out.write(buffer, 0, offset);
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
         }
-        decompressed = out.toString(String.valueOf(StandardCharsets.UTF_8));
-        gzipInputStream.close();
-        byteArrayInputStream.close();
-        out.close();
-        return decompressed;
-    }
-}
 
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
 
+        private void deflate() throws IOException {
+            int count = deflater.deflate(buffer, 0, buffer.length);
+            if (count > 0) {
+                base64.write(buffer, 0, count);
+            }
+        }
 
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead());
+            } finally {
+                // Free the native zlib state now rather than leaving it to the cleaner
+                deflater.end();
+                base64.close();
+            }
+        }
 
+        private void writeIntLE(int value) throws IOException {
+            base64.write(value);
+            base64.write(value >>> 8);
+            base64.write(value >>> 16);
+            base64.write(value >>> 24);
+        }
+    }
+}
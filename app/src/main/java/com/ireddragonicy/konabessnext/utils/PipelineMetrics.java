@@ -0,0 +1,190 @@
+package com.ireddragonicy.konabessnext.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lightweight timing of the boot image pipeline. Every run ("prepare" or
+ * "repack") is a list of stages with wall time, bytes processed and DTB
+ * count. The last {@link #MAX_RUNS} runs are kept in SharedPreferences and
+ * can be exported as JSON.
+ */
+public class PipelineMetrics {
+    private static final String PREFS_NAME = "PipelineMetrics";
+    private static final String KEY_RUNS = "runs";
+    private static final int MAX_RUNS = 20;
+
+    public static final String RUN_PREPARE = "prepare";
+    public static final String RUN_REPACK = "repack";
+
+    private static Run currentRun;
+
+    private static class Run {
+        final String name;
+        final long startedAt = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final List<JSONObject> stages = new ArrayList<>();
+
+        Run(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A running stage, recorded when {@link #end} is called.
+     */
+    public static class Stage {
+        private final Run run;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+
+        private Stage(Run run, String name) {
+            this.run = run;
+            this.name = name;
+        }
+
+        public void end() {
+            end(0, 0);
+        }
+
+        public void end(long bytes, int dtbCount) {
+            if (run == null) {
+                return;
+            }
+            JSONObject stage = new JSONObject();
+            try {
+                stage.put("stage", name);
+                stage.put("ms", (System.nanoTime() - startNanos) / 1_000_000.0);
+                stage.put("bytes", bytes);
+                stage.put("dtbs", dtbCount);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return;
+            }
+            synchronized (run.stages) {
+                run.stages.add(stage);
+            }
+        }
+    }
+
+    /**
+     * Start a new run. A run that was never finished (the pipeline failed
+     * half way) is stored as incomplete.
+     */
+    public static synchronized void beginRun(Context context, String name) {
+        if (currentRun != null) {
+            store(context, currentRun, false);
+        }
+        currentRun = new Run(name);
+    }
+
+    public static synchronized Stage stage(String name) {
+        return new Stage(currentRun, name);
+    }
+
+    public static synchronized void endRun(Context context) {
+        if (currentRun != null) {
+            store(context, currentRun, true);
+            currentRun = null;
+        }
+    }
+
+    private static void store(Context context, Run run, boolean completed) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("run", run.name);
+            json.put("started_at", run.startedAt);
+            json.put("total_ms", (System.nanoTime() - run.startNanos) / 1_000_000.0);
+            json.put("completed", completed);
+            JSONArray stages = new JSONArray();
+            synchronized (run.stages) {
+                for (JSONObject stage : run.stages) {
+                    stages.put(stage);
+                }
+            }
+            json.put("stages", stages);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        JSONArray runs = getRuns(context);
+        JSONArray trimmed = new JSONArray();
+        trimmed.put(json);
+        for (int i = 0; i < runs.length() && trimmed.length() < MAX_RUNS; i++) {
+            trimmed.put(runs.opt(i));
+        }
+        getPrefs(context).edit().putString(KEY_RUNS, trimmed.toString()).apply();
+    }
+
+    /**
+     * @return stored runs, newest first
+     */
+    public static JSONArray getRuns(Context context) {
+        try {
+            return new JSONArray(getPrefs(context).getString(KEY_RUNS, "[]"));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return new JSONArray();
+        }
+    }
+
+    public static String toJson(Context context) {
+        try {
+            return getRuns(context).toString(2);
+        } catch (JSONException e) {
+            return getRuns(context).toString();
+        }
+    }
+
+    /**
+     * Plain text summary of the stored runs for display.
+     */
+    public static String toReport(Context context) {
+        JSONArray runs = getRuns(context);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.optJSONObject(i);
+            if (run == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(String.format(Locale.US, "%s  %.0f ms%s\n", run.optString("run"),
+                    run.optDouble("total_ms"), run.optBoolean("completed") ? "" : "  (failed)"));
+            JSONArray stages = run.optJSONArray("stages");
+            for (int j = 0; stages != null && j < stages.length(); j++) {
+                JSONObject stage = stages.optJSONObject(j);
+                sb.append(String.format(Locale.US, "  %-14s %8.1f ms", stage.optString("stage"),
+                        stage.optDouble("ms")));
+                long bytes = stage.optLong("bytes");
+                if (bytes > 0) {
+                    sb.append(String.format(Locale.US, "  %.1f MB", bytes / (1024.0 * 1024.0)));
+                }
+                int dtbs = stage.optInt("dtbs");
+                if (dtbs > 0) {
+                    sb.append("  ").append(dtbs).append(" dtb");
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    public static void clear(Context context) {
+        getPrefs(context).edit().remove(KEY_RUNS).apply();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -1,10 +1,41 @@
 package com.ireddragonicy.konabessnext.utils;
 
+import com.topjohnwu.superuser.CallbackList;
 import com.topjohnwu.superuser.Shell;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class RootHelper {
+
+    private static final String PID_MARKER = "KONABESS_PGID:";
+    private static final int MAX_IDLE_WORKERS = 2;
+    // Worker shells for streaming commands, so long jobs never block the main shell
+    private static final Deque<Shell> IDLE_WORKERS = new ArrayDeque<>();
+
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "root-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Receives command output while the command is still running
+     */
+    @FunctionalInterface
+    public interface LineCallback {
+        void onLine(String line);
+    }
     
     static {
         // Initialize libsu with Shell.Config
@@ -58,8 +89,159 @@ public class RootHelper {
         Shell.Result result = execSh(commands);
         return result.getOut();
     }
-}
 
+    /**
+     * Execute a root command on a worker shell and stream output lines to the
+     * callback as they arrive (on the shell's reader thread).
+     * The returned future completes with the full result, stdout and stderr
+     * together. The command runs in its own process group, so cancelling the
+     * future or the timeout expiring kills it and every child it started
+     * (magiskboot, dtc, ...), and the worker shell can be used again.
+     *
+     * @param timeoutMs maximum run time for this call, 0 for no limit
+     * @param callback  may be null when only the final result is needed
+     */
+    public static StreamingJob execStreaming(long timeoutMs, LineCallback callback, String... commands) {
+        StreamingJob job = new StreamingJob();
+        if (timeoutMs > 0) {
+            job.timeout = TIMEOUTS.schedule(() -> {
+                if (job.completeExceptionally(new TimeoutException(
+                        "Root command timed out after " + timeoutMs + " ms"))) {
+                    job.kill();
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        Shell.EXECUTOR.execute(() -> {
+            Shell shell = null;
+            try {
+                shell = acquireWorker();
+                if (!job.attach()) {
+                    // Cancelled or timed out while the shell was starting
+                    releaseWorker(shell);
+                    return;
+                }
+                List<String> out = new CallbackList<String>(Runnable::run,
+                        Collections.synchronizedList(new ArrayList<>())) {
+                    @Override
+                    public void onAddElement(String line) {
+                        if (callback != null) {
+                            callback.onLine(line);
+                        }
+                    }
+                };
+                // Only the wrapper writes to stderr, to report the process group
+                List<String> pid = new CallbackList<String>(Runnable::run) {
+                    @Override
+                    public void onAddElement(String line) {
+                        if (line.startsWith(PID_MARKER)) {
+                            job.started(line.substring(PID_MARKER.length()).trim());
+                        }
+                    }
+                };
+                Shell worker = shell;
+                worker.newJob().add(wrapInProcessGroup(commands)).to(out, pid).submit(Runnable::run, result -> {
+                    job.complete(result);
+                    job.finished();
+                    releaseWorker(worker);
+                });
+            } catch (Exception e) {
+                job.completeExceptionally(e);
+                job.finished();
+                if (shell != null) {
+                    releaseWorker(shell);
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Run the commands as a new session in the background and wait for them,
+     * so the worker shell stays usable and the session id, which is also the
+     * process group, is known up front.
+     */
+    private static String wrapInProcessGroup(String... commands) {
+        String script = String.join("\n", commands).replace("'", "'\\''");
+        return "setsid sh -c '" + script + "' </dev/null 2>&1 &\n"
+                + "echo " + PID_MARKER + "$! >&2\n"
+                + "wait $!";
+    }
+
+    private static Shell acquireWorker() {
+        synchronized (IDLE_WORKERS) {
+            while (!IDLE_WORKERS.isEmpty()) {
+                Shell shell = IDLE_WORKERS.pop();
+                if (shell.isAlive()) {
+                    return shell;
+                }
+            }
+        }
+        return Shell.Builder.create().build();
+    }
 
+    private static void releaseWorker(Shell shell) {
+        synchronized (IDLE_WORKERS) {
+            if (shell.isAlive() && IDLE_WORKERS.size() < MAX_IDLE_WORKERS) {
+                IDLE_WORKERS.push(shell);
+                return;
+            }
+        }
+        try {
+            shell.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Handle for a command started with {@link #execStreaming}
+     */
+    public static class StreamingJob extends CompletableFuture<Shell.Result> {
+        private boolean running = true;
+        private String processGroup;
+        private ScheduledFuture<?> timeout;
 
+        private synchronized boolean attach() {
+            if (isDone()) {
+                running = false;
+                return false;
+            }
+            return true;
+        }
+
+        private synchronized void started(String processGroup) {
+            this.processGroup = processGroup;
+            if (isDone()) {
+                // Cancelled before the command got going
+                kill();
+            }
+        }
+
+        private synchronized void finished() {
+            running = false;
+            processGroup = null;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        private synchronized void kill() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            // Without a process group yet, started() kills it once it has one
+            if (running && processGroup != null && processGroup.matches("\\d+")) {
+                // Short command, the main shell is fine for it
+                Shell.cmd("kill -9 -- -" + processGroup).submit();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            kill();
+            return cancelled;
+        }
+    }
+}
@@ -53,8 +53,12 @@ public class GpuFrequencyViewModel extends ViewModel {
     private final MutableLiveData<Event<String>> toastEvent = new MutableLiveData<>();
     private final MutableLiveData<Event<Integer>> errorEvent = new MutableLiveData<>();
 
-    // Saved signature for dirty detection
-    private String lastSavedSignature = null;
+    // Dirty detection: each change gets a new edit version, undo/redo restore
+    // the version of their state, and the saved version is the one last
+    // written out
+    private long editVersionCounter = 0;
+    private long editVersion = 0;
+    private long savedEditVersion = -1;
 
     public GpuFrequencyViewModel() {
         this.repository = new GpuTableRepository();
@@ -115,7 +119,6 @@ public class GpuFrequencyViewModel extends ViewModel {
             repository.decode();
 
             List<Bin> bins = repository.getBins();
-            lastSavedSignature = computeSignature();
 
             binsState.setValue(UiState.success(bins));
             resetState();
@@ -289,10 +292,8 @@ public class GpuFrequencyViewModel extends ViewModel {
     // ========================================================================
 
     private void captureStateForUndo() {
-        EditorState state = new EditorState(
-                repository.getLinesInDts(),
-                repository.getBins(),
-                repository.getBinPosition());
+        EditorState state = captureState();
+        editVersion = ++editVersionCounter;
 
         undoStack.push(state);
         while (undoStack.size() > MAX_HISTORY_SIZE) {
@@ -307,10 +308,7 @@ public class GpuFrequencyViewModel extends ViewModel {
             return;
 
         // Save current state to redo
-        EditorState current = new EditorState(
-                repository.getLinesInDts(),
-                repository.getBins(),
-                repository.getBinPosition());
+        EditorState current = captureState();
         redoStack.push(current);
         while (redoStack.size() > MAX_HISTORY_SIZE) {
             redoStack.removeLast();
@@ -330,10 +328,7 @@ public class GpuFrequencyViewModel extends ViewModel {
             return;
 
         // Save current state to undo
-        EditorState current = new EditorState(
-                repository.getLinesInDts(),
-                repository.getBins(),
-                repository.getBinPosition());
+        EditorState current = captureState();
         undoStack.push(current);
 
         // Restore redo state
@@ -345,10 +340,20 @@ public class GpuFrequencyViewModel extends ViewModel {
         notifyBinsChanged();
     }
 
+    private EditorState captureState() {
+        EditorState state = new EditorState(
+                repository.getLinesInDts(),
+                repository.getBins(),
+                repository.getBinPosition());
+        state.editVersion = editVersion;
+        return state;
+    }
+
     private void restoreState(EditorState state) {
         repository.setLinesInDts(state.getLinesInDts());
         repository.setBins(state.getBins());
         repository.setBinPosition(state.getBinPosition());
+        editVersion = state.editVersion;
         refreshDirtyState();
     }
 
@@ -369,7 +374,7 @@ public class GpuFrequencyViewModel extends ViewModel {
             List<String> fullDts = repository.generateFullDts();
             repository.writeOut(fullDts);
 
-            lastSavedSignature = computeSignature();
+            savedEditVersion = editVersion;
             isDirty.setValue(false);
 
             if (showToast) {
@@ -409,21 +414,7 @@ public class GpuFrequencyViewModel extends ViewModel {
     }
 
     private void refreshDirtyState() {
-        if (lastSavedSignature == null) {
-            isDirty.setValue(true);
-            return;
-        }
-        boolean dirty = !lastSavedSignature.equals(computeSignature());
-        isDirty.setValue(dirty);
-    }
-
-    private String computeSignature() {
-        List<String> snapshot = repository.generateFullDts();
-        StringBuilder sb = new StringBuilder();
-        for (String line : snapshot) {
-            sb.append(line).append("\n");
-        }
-        return sb.toString();
+        isDirty.setValue(editVersion != savedEditVersion);
     }
 
     public boolean hasPendingChanges() {
@@ -465,7 +456,8 @@ public class GpuFrequencyViewModel extends ViewModel {
         undoStack.clear();
         redoStack.clear();
         changeHistory.setValue(new ArrayList<>());
-        lastSavedSignature = computeSignature();
+        editVersion = ++editVersionCounter;
+        savedEditVersion = editVersion;
         isDirty.setValue(false);
         updateUndoRedoState();
     }
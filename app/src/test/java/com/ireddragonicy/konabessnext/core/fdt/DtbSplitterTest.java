@@ -0,0 +1,148 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks {@link DtbSplitter} against the byte array splitter it replaced and
+ * benchmarks the two. The benchmark only runs with -Pbenchmark.
+ */
+public class DtbSplitterTest {
+    // What the old splitter required after a magic: the magic and totalsize
+    private static final int LEGACY_HEADER_SIZE = 8;
+    private static final byte[] MAGIC = { (byte) 0xd0, 0x0d, (byte) 0xfe, (byte) 0xed };
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void splitsLikeTheOldSplitter() throws IOException {
+        byte[] image = image(new Random(1), 12, 64 * 1024);
+        File source = temp.newFile("dtb");
+        Files.write(source.toPath(), image);
+        File newDir = temp.newFolder("new");
+        File oldDir = temp.newFolder("old");
+
+        int count = DtbSplitter.split(source, newDir);
+        int oldCount = legacySplit(image, oldDir);
+
+        assertEquals(12, count);
+        assertEquals(oldCount, count);
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(Files.readAllBytes(new File(oldDir, i + ".dtb").toPath()),
+                    Files.readAllBytes(new File(newDir, i + ".dtb").toPath()));
+        }
+    }
+
+    @Test
+    public void skipsMagicWithImpossibleSize() {
+        byte[] image = image(new Random(2), 3, 4096);
+        byte[] broken = Arrays.copyOf(image, image.length + 64);
+        System.arraycopy(MAGIC, 0, broken, image.length, 4);
+        // totalsize reaching past the end of the buffer
+        broken[image.length + 4] = 0x7f;
+
+        assertEquals(3, DtbSplitter.findOffsets(ByteBuffer.wrap(broken)).size());
+    }
+
+    /**
+     * 40 MB image of 100 blobs of 400 KB with random padding, as in the
+     * numbers quoted for the change. Prints the time and heap allocation of
+     * each splitter per run.
+     */
+    @Test
+    public void benchmark() throws IOException {
+        assumeTrue(Boolean.getBoolean("konabess.benchmark"));
+        byte[] image = image(new Random(3), 100, 400 * 1024);
+        File source = temp.newFile("bench.dtb");
+        Files.write(source.toPath(), image);
+        File outDir = temp.newFolder("bench");
+
+        for (int run = 0; run < 8; run++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            legacySplit(Files.readAllBytes(source.toPath()), outDir);
+            long oldNanos = System.nanoTime() - start;
+            long oldAllocated = allocatedBytes() - allocated;
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            DtbSplitter.split(source, outDir);
+            long newNanos = System.nanoTime() - start;
+            long newAllocated = allocatedBytes() - allocated;
+
+            System.out.printf("run %d: old %d ms, %d KB allocated; new %d ms, %d KB allocated%n", run,
+                    oldNanos / 1_000_000, oldAllocated / 1024, newNanos / 1_000_000, newAllocated / 1024);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Blobs with a valid magic and totalsize and random contents, separated
+     * by up to 4 KB of random padding.
+     */
+    private static byte[] image(Random random, int blobs, int blobSize) {
+        List<byte[]> parts = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; i < blobs; i++) {
+            int size = blobSize - random.nextInt(blobSize / 4);
+            byte[] blob = new byte[size];
+            random.nextBytes(blob);
+            System.arraycopy(MAGIC, 0, blob, 0, 4);
+            ByteBuffer.wrap(blob).putInt(4, size);
+            byte[] padding = new byte[random.nextInt(4096)];
+            random.nextBytes(padding);
+            parts.add(blob);
+            parts.add(padding);
+            total += size + padding.length;
+        }
+        byte[] image = new byte[total];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, image, offset, part.length);
+            offset += part.length;
+        }
+        return image;
+    }
+
+    // The splitter KonaBessCore used before DtbSplitter, kept as the reference
+    private static int legacySplit(byte[] data, File outDir) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        int i = 0;
+        while (i + LEGACY_HEADER_SIZE < data.length) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + 4), MAGIC)) {
+                offsets.add(i);
+                int size = ((data[i + 4] & 0xFF) << 24) | ((data[i + 5] & 0xFF) << 16)
+                        | ((data[i + 6] & 0xFF) << 8) | (data[i + 7] & 0xFF);
+                i += Math.max(size, 1);
+            } else {
+                i++;
+            }
+        }
+        for (int j = 0; j < offsets.size(); j++) {
+            int start = offsets.get(j);
+            int end = (j + 1 < offsets.size()) ? offsets.get(j + 1) : data.length;
+            Files.write(new File(outDir, j + ".dtb").toPath(), Arrays.copyOfRange(data, start, end));
+        }
+        return offsets.size();
+    }
+}
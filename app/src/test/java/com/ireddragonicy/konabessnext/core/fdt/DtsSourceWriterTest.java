@@ -0,0 +1,186 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Pins the DTS text {@link FdtReader} and {@link DtsSourceWriter} produce to
+ * what "dtc -I dtb -O dts" 1.4.4 prints, since the text editors match on
+ * those exact lines.
+ */
+public class DtsSourceWriterTest {
+
+    @Test
+    public void guessesTypesLikeDtc() {
+        assertProperty("status = \"okay\";", bytes("okay\0"));
+        assertProperty("compatible = \"qcom,kona-mtp\", \"qcom,kona\";", bytes("qcom,kona-mtp\0qcom,kona\0"));
+        // A leading NUL is an empty string in the list
+        assertProperty("p = \"\", \"abc\";", bytes("\0abc\0"));
+        // Too many NULs for a string
+        assertProperty("p = <0x0>;", new byte[4]);
+        assertProperty("p = <0x61006200>;", bytes("a\0b\0"));
+        // Not NUL terminated, or not printable
+        assertProperty("p = [61 62 63];", bytes("abc"));
+        assertProperty("p = [80 61 00];", new byte[] { (byte) 0x80, 'a', 0 });
+        assertProperty("p = [01 02 03];", new byte[] { 1, 2, 3 });
+        assertProperty("qcom,gpu-freq = <0x2faf0800>;", new byte[] { 0x2f, (byte) 0xaf, 0x08, 0x00 });
+        assertProperty("opp-hz = <0x0 0x2faf0800>;", new byte[] { 0, 0, 0, 0, 0x2f, (byte) 0xaf, 0x08, 0x00 });
+        assertProperty("p = <0xffffffff>;", new byte[] { -1, -1, -1, -1 });
+        assertProperty("ranges;", new byte[0]);
+    }
+
+    @Test
+    public void backspaceIsNotAStringCharacter() {
+        // dtc's isstring() has "\a\f\n\r\t\v" but not '\b'
+        assertProperty("p = <0x61086300>;", bytes("a\bc\0"));
+        assertProperty("p = [61 08 00];", bytes("a\b\0"));
+    }
+
+    @Test
+    public void escapesStrings() {
+        assertProperty("p = \"t\\tn\\nq\\\"b\\\\\\a\\v\\f\\r\";", bytes("t\tn\nq\"b\\\u0007\u000b\f\r\0"));
+        assertProperty("p = \"it's\";", bytes("it's\0"));
+    }
+
+    @Test
+    public void laysOutNodesLikeDtc() {
+        FdtTree tree = new FdtTree();
+        tree.memReserve.add(new long[] { 0x80000000L, 0x100000L });
+        tree.root.properties.add(new FdtProperty("model", bytes("kona\0")));
+        FdtNode soc = new FdtNode("soc");
+        FdtNode empty = new FdtNode("empty");
+        FdtNode gpu = new FdtNode("qcom,kgsl-3d0@3d00000");
+        gpu.properties.add(new FdtProperty("status", bytes("okay\0")));
+        FdtNode levels = new FdtNode("qcom,gpu-pwrlevels");
+        gpu.children.add(levels);
+        soc.children.add(empty);
+        soc.children.add(gpu);
+        tree.root.children.add(soc);
+
+        assertEquals("/dts-v1/;\n"
+                + "\n"
+                + "/memreserve/\t0x0000000080000000 0x0000000000100000;\n"
+                + "/ {\n"
+                + "\tmodel = \"kona\";\n"
+                + "\n"
+                + "\tsoc {\n"
+                + "\n"
+                + "\t\tempty {\n"
+                + "\t\t};\n"
+                + "\n"
+                + "\t\tqcom,kgsl-3d0@3d00000 {\n"
+                + "\t\t\tstatus = \"okay\";\n"
+                + "\n"
+                + "\t\t\tqcom,gpu-pwrlevels {\n"
+                + "\t\t\t};\n"
+                + "\t\t};\n"
+                + "\t};\n"
+                + "};\n", DtsSourceWriter.toSource(tree));
+    }
+
+    /**
+     * A blob assembled by hand rather than by FdtWriter, with a NOP token,
+     * a name that points into the tail of another and the blob starting
+     * part way into the buffer, as it does in a mapped boot image.
+     */
+    @Test
+    public void readsBlobIntoDtcText() throws IOException {
+        String strings = "#address-cells\0compatible\0";
+        int addressCells = 0;
+        int cells = "#address-".length();
+        int compatible = "#address-cells\0".length();
+
+        Blob struct = new Blob();
+        struct.token(FdtReader.FDT_BEGIN_NODE).name("");
+        struct.prop(addressCells, new byte[] { 0, 0, 0, 2 });
+        struct.prop(compatible, bytes("qcom,kona\0"));
+        struct.token(FdtReader.FDT_NOP);
+        struct.token(FdtReader.FDT_BEGIN_NODE).name("soc");
+        struct.prop(cells, new byte[] { 0, 0, 0, 1 });
+        struct.token(FdtReader.FDT_END_NODE);
+        struct.token(FdtReader.FDT_END_NODE);
+        struct.token(FdtReader.FDT_END);
+
+        int structOffset = 40 + 16;
+        int stringsOffset = structOffset + struct.size();
+        Blob blob = new Blob();
+        blob.token(FdtReader.FDT_MAGIC)
+                .token(stringsOffset + strings.length())
+                .token(structOffset)
+                .token(stringsOffset)
+                .token(40)
+                .token(17)
+                .token(16)
+                .token(0)
+                .token(strings.length())
+                .token(struct.size())
+                .token(0).token(0).token(0).token(0);
+        blob.raw(struct.toByteArray()).raw(bytes(strings));
+
+        byte[] data = blob.toByteArray();
+        ByteBuffer buf = ByteBuffer.allocate(data.length + 12);
+        buf.position(12);
+        buf.put(data);
+        buf.position(12);
+
+        assertEquals("/dts-v1/;\n"
+                + "\n"
+                + "/ {\n"
+                + "\t#address-cells = <0x2>;\n"
+                + "\tcompatible = \"qcom,kona\";\n"
+                + "\n"
+                + "\tsoc {\n"
+                + "\t\tcells = <0x1>;\n"
+                + "\t};\n"
+                + "};\n", DtsSourceWriter.toSource(FdtReader.read(buf)));
+    }
+
+    private static void assertProperty(String expected, byte[] value) {
+        String name = expected.substring(0, expected.indexOf(expected.contains(" = ") ? " = " : ";"));
+        FdtTree tree = new FdtTree();
+        tree.root.properties.add(new FdtProperty(name, value));
+        assertEquals("/dts-v1/;\n\n/ {\n\t" + expected + "\n};\n", DtsSourceWriter.toSource(tree));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static class Blob extends ByteArrayOutputStream {
+        Blob token(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+            return this;
+        }
+
+        Blob raw(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        Blob name(String name) {
+            raw(bytes(name + "\0"));
+            pad();
+            return this;
+        }
+
+        void prop(int nameOffset, byte[] value) {
+            token(FdtReader.FDT_PROP).token(value.length).token(nameOffset).raw(value);
+            pad();
+        }
+
+        private void pad() {
+            while (size() % 4 != 0) {
+                write(0);
+            }
+        }
+    }
+}
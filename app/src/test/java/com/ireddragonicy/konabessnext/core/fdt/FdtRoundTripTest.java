@@ -0,0 +1,188 @@
+package com.ireddragonicy.konabessnext.core.fdt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Round trips DTS through {@link DtsSourceParser} and {@link FdtWriter} and
+ * back through {@link FdtReader}, and checks the blob layout dtc would write.
+ * Those blobs end up in the boot partition.
+ */
+public class FdtRoundTripTest {
+    // Already in the layout DtsSourceWriter emits, so it has to come back as is
+    private static final String SOURCE = "/dts-v1/;\n"
+            + "\n"
+            + "/memreserve/\t0x0000000080000000 0x0000000000100000;\n"
+            + "/memreserve/\t0x00000000a0000000 0x0000000000002000;\n"
+            + "/ {\n"
+            + "\tmodel = \"Qualcomm Technologies, Inc. kona\";\n"
+            + "\tcompatible = \"qcom,kona-mtp\", \"qcom,kona\", \"qcom,mtp\";\n"
+            + "\t#address-cells = <0x2>;\n"
+            + "\t#size-cells = <0x2>;\n"
+            + "\n"
+            + "\tsoc {\n"
+            + "\t\tranges;\n"
+            + "\t\treg = <0x0 0x3d00000 0x0 0x40000>;\n"
+            + "\t\tmac = [00 11 22 33 44];\n"
+            + "\t\tlabel = \"tab\\there \\\"quoted\\\"\";\n"
+            + "\n"
+            + "\t\tqcom,gpu-pwrlevels-0 {\n"
+            + "\t\t\tqcom,speed-bin = <0x0>;\n"
+            + "\t\t\tqcom,gpu-freq = <0x2faf0800>;\n"
+            + "\t\t};\n"
+            + "\t};\n"
+            + "};\n";
+
+    @Test
+    public void sourceSurvivesBlobRoundTrip() throws IOException {
+        FdtTree tree = DtsSourceParser.parse(SOURCE);
+        byte[] blob = FdtWriter.toBlob(tree);
+        FdtTree read = FdtReader.read(ByteBuffer.wrap(blob));
+
+        assertEquals(SOURCE, DtsSourceWriter.toSource(read));
+        // Writing what was read gives the same blob again
+        assertArrayEquals(blob, FdtWriter.toBlob(read));
+    }
+
+    @Test
+    public void headerMatchesDtcLayout() throws IOException {
+        byte[] blob = FdtWriter.toBlob(DtsSourceParser.parse(SOURCE));
+        ByteBuffer buf = ByteBuffer.wrap(blob);
+
+        assertEquals(FdtReader.FDT_MAGIC, buf.getInt(0));
+        assertEquals(blob.length, buf.getInt(4));
+        // Two reserve entries plus the terminating one, right after the header
+        assertEquals(40, buf.getInt(16));
+        assertEquals(40 + 3 * 16, buf.getInt(8));
+        assertEquals(17, buf.getInt(20));
+        assertEquals(16, buf.getInt(24));
+        int structOffset = buf.getInt(8);
+        int stringsOffset = buf.getInt(12);
+        assertEquals(stringsOffset, structOffset + buf.getInt(36));
+        assertEquals(blob.length, stringsOffset + buf.getInt(32));
+
+        assertEquals(0x80000000L, buf.getLong(40));
+        assertEquals(0x100000L, buf.getLong(48));
+        assertEquals(0xa0000000L, buf.getLong(56));
+        assertEquals(0x2000L, buf.getLong(64));
+        assertEquals(0L, buf.getLong(72));
+        assertEquals(0L, buf.getLong(80));
+    }
+
+    @Test
+    public void mixedValuesKeepTheirBytes() throws IOException {
+        FdtTree tree = DtsSourceParser.parse("/dts-v1/;\n/ {\n"
+                + "\tmixed = \"ab\", <0x1>, [ff 00], /bits/ 16 <0x1234>, \"c\";\n"
+                + "\twide = /bits/ 64 <0x1 0x200000000>;\n"
+                + "\tnarrow = /bits/ 8 <0x1 0xff 'A'>;\n"
+                + "\texpr = <(1 + 2) (0x10 << 4) (-1)>;\n"
+                + "\tescapes = \"\\x41\\101\\a\\b\";\n"
+                + "};\n");
+        byte[] blob = FdtWriter.toBlob(tree);
+        FdtNode root = FdtReader.read(ByteBuffer.wrap(blob)).root;
+
+        assertArrayEquals(new byte[] { 'a', 'b', 0, 0, 0, 0, 1, (byte) 0xff, 0, 0x12, 0x34, 'c', 0 },
+                root.getProperty("mixed").value);
+        assertArrayEquals(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0, 0 },
+                root.getProperty("wide").value);
+        assertArrayEquals(new byte[] { 1, (byte) 0xff, 'A' }, root.getProperty("narrow").value);
+        assertArrayEquals(new byte[] { 0, 0, 0, 3, 0, 0, 1, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+                root.getProperty("expr").value);
+        assertArrayEquals(new byte[] { 'A', 'A', 7, '\b', 0 }, root.getProperty("escapes").value);
+    }
+
+    @Test
+    public void stringsBlockSharesSuffixes() throws IOException {
+        FdtTree tree = DtsSourceParser.parse("/dts-v1/;\n/ {\n"
+                + "\t#address-cells = <0x1>;\n"
+                + "\tlinux,phandle = <0x1>;\n"
+                + "\tphandle = <0x1>;\n"
+                + "\taddress-cells = <0x1>;\n"
+                + "\tcells = <0x1>;\n"
+                + "\n"
+                + "\tchild {\n"
+                + "\t\tphandle = <0x2>;\n"
+                + "\t};\n"
+                + "};\n");
+        byte[] blob = FdtWriter.toBlob(tree);
+        ByteBuffer buf = ByteBuffer.wrap(blob);
+        int stringsOffset = buf.getInt(12);
+        int stringsSize = buf.getInt(32);
+
+        // The later names are tails of earlier ones and are not stored again
+        assertEquals("#address-cells\0linux,phandle\0",
+                new String(blob, stringsOffset, stringsSize, StandardCharsets.ISO_8859_1));
+
+        FdtNode root = FdtReader.read(buf).root;
+        assertEquals(5, root.properties.size());
+        assertEquals("address-cells", root.properties.get(3).name);
+        assertEquals("cells", root.properties.get(4).name);
+        assertEquals(2, root.getChild("child").getProperty("phandle").getCell(0));
+    }
+
+    @Test
+    public void redefinedPropertyReplacesValueInPlace() throws IOException {
+        FdtTree tree = DtsSourceParser.parse("/dts-v1/;\n/ {\n"
+                + "\ta = <0x1>;\n\tb = <0x2>;\n\ta = <0x3>;\n"
+                + "\tnode { x = <0x1>; };\n\tnode { y = <0x2>; };\n"
+                + "};\n");
+
+        assertEquals("a", tree.root.properties.get(0).name);
+        assertEquals(3, tree.root.getProperty("a").getCell(0));
+        assertEquals(1, tree.root.children.size());
+        assertEquals(2, tree.root.getChild("node").properties.size());
+    }
+
+    @Test
+    public void acceptsLabelsAndComments() throws IOException {
+        FdtTree tree = DtsSourceParser.parse("/dts-v1/;\n"
+                + "// comment\n"
+                + "root: / {\n"
+                + "\t/* block\n comment */\n"
+                + "\tgpu: qcom,kgsl-3d0@3d00000 {\n"
+                + "\t\tstatus = \"okay\"; // trailing\n"
+                + "\t};\n"
+                + "};\n");
+
+        assertEquals("okay", tree.root.getChild("qcom,kgsl-3d0@3d00000").getString("status"));
+    }
+
+    /**
+     * Anything that needs symbols has to be turned down, that is what sends
+     * the source to the dtc binary instead.
+     */
+    @Test
+    public void rejectsWhatNeedsDtc() {
+        String[] sources = {
+                "/dts-v1/;\n/ {\n\tclocks = <&gpucc 0x1>;\n};\n",
+                "/dts-v1/;\n/ {\n\tgpu = &gpu_label;\n};\n",
+                "/dts-v1/;\n/ {\n\tpath = &{/soc/gpu};\n};\n",
+                "/dts-v1/;\n/ {\n\t/delete-node/ soc;\n};\n",
+                "/dts-v1/;\n/ {\n\t/delete-property/ model;\n};\n",
+                "/dts-v1/;\n/include/ \"other.dtsi\"\n/ {\n};\n",
+                "/dts-v1/;\n/plugin/;\n/ {\n};\n",
+                "/dts-v1/;\n/ {\n};\n&gpu {\n\tstatus = \"okay\";\n};\n",
+                "/dts-v1/;\n/ {\n\tbad = <0x100000000>;\n};\n",
+                "/dts-v1/;\n/ {\n\tbad = /bits/ 12 <0x1>;\n};\n",
+                "/dts-v1/;\n/ {\n\tunterminated = \"abc;\n};\n",
+                "/dts-v1/;\n/ {\n\tnode {\n};\n",
+                "/dts-v1/;\n",
+        };
+        for (String source : sources) {
+            try {
+                DtsSourceParser.parse(source);
+                fail("Accepted: " + source);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("DTS line "));
+            }
+        }
+    }
+}
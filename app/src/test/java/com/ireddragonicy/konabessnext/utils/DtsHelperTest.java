@@ -0,0 +1,270 @@
+package com.ireddragonicy.konabessnext.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * Checks the {@link DtsPropertyParser} based helpers against the string
+ * replacing helpers they replaced and benchmarks the two. The benchmark only
+ * runs with -Pbenchmark.
+ */
+public class DtsHelperTest {
+    // As dtc writes them, plus hand edited forms
+    private static final String[] INT_LINES = {
+            "qcom,gpu-freq = <0x2faf0800>;",
+            "\t\t\t\tqcom,gpu-freq = <0x2faf0800>;",
+            "qcom,gpu-freq = <800000000>;",
+            "qcom,gpu-freq=<0x2faf0800>;",
+            "qcom,level = <0x80>;",
+            "qcom,cx-level = <0x40>;",
+            "qcom,bus-freq = <0xb>;",
+            "qcom,bus-min = <0x8>;",
+            "qcom,bus-max = <0xd>;",
+            "qcom,acd-level = <0xa82d5ffd>;",
+            "qcom,initial-pwrlevel = <0x0>;",
+            "opp-microvolt = <0x249f0>;",
+            // A cell dtc printed as a string
+            "qcom,level = \"ABC\";",
+            "qcom,level = \"A\\tC\";",
+            "qcom,level = \"A\\\\C\";",
+    };
+
+    private static final String[] HZ_LINES = {
+            "opp-hz = <0x0 0x2faf0800>;",
+            "\t\topp-hz = <0x0 0x1dcd6500>;",
+            "opp-hz = <0x0 800000000>;",
+    };
+
+    private static final String[] HEX_LINES = {
+            "qcom,gpu-freq = <0x2faf0800>;",
+            "interrupts = <0x0 0x12c 0x4>;",
+            "clocks = <&gpucc 0x1>;",
+            "  reg = <0x3d00000 0x40000>;  ",
+    };
+
+    // Lines the old helpers could not read either
+    private static final String[] BAD_LINES = {
+            "qcom,gpu-freq;",
+            "qcom,gpu-freq = <>;",
+            "qcom,level = \"AB\";",
+            "compatible = \"qcom,gpu-pwrlevels\";",
+    };
+
+    @Test
+    public void intLinesMatchOldHelpers() throws Exception {
+        for (String line : INT_LINES) {
+            DtsHelper.intLine expected = LegacyDtsHelper.decode_int_line(line);
+            DtsHelper.intLine actual = DtsHelper.decode_int_line(line);
+            assertEquals(line, expected.name, actual.name);
+            assertEquals(line, expected.value, actual.value);
+        }
+    }
+
+    @Test
+    public void hzLinesMatchOldHelpers() throws Exception {
+        for (String line : HZ_LINES) {
+            DtsHelper.intLine expected = LegacyDtsHelper.decode_int_line_hz(line);
+            DtsHelper.intLine actual = DtsHelper.decode_int_line_hz(line);
+            assertEquals(line, expected.name, actual.name);
+            assertEquals(line, expected.value, actual.value);
+        }
+    }
+
+    @Test
+    public void hexLinesMatchOldHelpers() throws Exception {
+        for (String line : HEX_LINES) {
+            DtsHelper.hexLine expected = LegacyDtsHelper.decode_hex_line(line);
+            DtsHelper.hexLine actual = DtsHelper.decode_hex_line(line);
+            assertEquals(line, expected.name, actual.name);
+            assertEquals(line, expected.value, actual.value);
+        }
+    }
+
+    @Test
+    public void badLinesFailLikeOldHelpers() {
+        for (String line : BAD_LINES) {
+            assertEquals(line, fails(() -> LegacyDtsHelper.decode_int_line(line)),
+                    fails(() -> DtsHelper.decode_int_line(line)));
+        }
+    }
+
+    /**
+     * 200k rounds of the lines of one GPU level plus an opp-hz line, as in
+     * the numbers quoted for the change. Prints time and heap allocation per
+     * line for the old helpers, the new helpers and the bare parser.
+     */
+    @Test
+    public void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("konabess.benchmark"));
+        String[] level = {
+                "qcom,gpu-freq = <0x2faf0800>;",
+                "qcom,level = <0x80>;",
+                "qcom,bus-freq = <0xb>;",
+                "qcom,bus-min = <0x8>;",
+                "qcom,bus-max = <0xd>;",
+                "qcom,acd-level = <0xa82d5ffd>;",
+                "qcom,initial-pwrlevel = <0x0>;",
+        };
+        String hz = "opp-hz = <0x0 0x2faf0800>;";
+        int rounds = 200_000;
+        int lines = rounds * (level.length + 1);
+        DtsPropertyParser parser = new DtsPropertyParser();
+
+        for (int run = 0; run < 5; run++) {
+            long sink = 0;
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String line : level)
+                    sink += LegacyDtsHelper.decode_int_line(line).value;
+                sink += LegacyDtsHelper.decode_int_line_hz(hz).value;
+            }
+            report("old DtsHelper", start, allocated, lines);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String line : level)
+                    sink += DtsHelper.decode_int_line(line).value;
+                sink += DtsHelper.decode_int_line_hz(hz).value;
+            }
+            report("new DtsHelper", start, allocated, lines);
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String line : level) {
+                    parser.parse(line);
+                    sink += parser.getValue(0);
+                }
+                parser.parse(hz);
+                sink += parser.getU64();
+            }
+            report("DtsPropertyParser", start, allocated, lines);
+            System.out.println("  (checksum " + sink + ")");
+        }
+    }
+
+    private static void report(String what, long start, long allocated, int lines) {
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-18s %4d ns/line %5d B/line%n", what, nanos / lines,
+                (allocatedBytes() - allocated) / lines);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private interface Decode {
+        Object run() throws Exception;
+    }
+
+    private static boolean fails(Decode decode) {
+        try {
+            decode.run();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * The helpers DtsHelper had before DtsPropertyParser, kept as the reference.
+     */
+    private static class LegacyDtsHelper {
+        static DtsHelper.intLine decode_int_line_hz(String line) throws Exception {
+            DtsHelper.intLine intLine = new DtsHelper.intLine();
+            line = line.trim();
+            int i = line.indexOf('=');
+            if (i < 0)
+                throw new Exception();
+            intLine.name = line.substring(0, i).trim();
+
+            String value = line.substring(i + 1);
+            value = value.replace("<0x0 ", "")
+                    .replace(">", "")
+                    .replace(";", "");
+
+            if (value.contains("0x")) {
+                value = value.replace("0x", "").trim();
+                intLine.value = Long.parseLong(value, 16);
+            } else {
+                value = value.trim();
+                intLine.value = Long.parseLong(value);
+            }
+            return intLine;
+        }
+
+        static int decode_stringed_int(String input) throws Exception {
+            input = input.replace("\"", "")
+                    .replace(";", "")
+                    .replace("\\a", "\7")
+                    .replace("\\b", "\b")
+                    .replace("\\f", "\f")
+                    .replace("\\n", "\n")
+                    .replace("\\r", "\r")
+                    .replace("\\t", "\t")
+                    .replace("\\v", "\11")
+                    .replace("\\\\", "\\")
+                    .replace("\\'", "'")
+                    .replace("\\\"", "\"")
+                    .trim();
+            char[] chars = input.toCharArray();
+            if (chars.length != 3)
+                throw new Exception();
+            int ret = 0;
+            for (int i = 1; i <= chars.length; i++) {
+                ret += (int) chars[chars.length - i] * Math.pow(256, i);
+            }
+            return ret;
+        }
+
+        static DtsHelper.intLine decode_int_line(String line) throws Exception {
+            DtsHelper.intLine intLine = new DtsHelper.intLine();
+            line = line.trim();
+            int i = line.indexOf('=');
+            if (i < 0)
+                throw new Exception();
+            intLine.name = line.substring(0, i).trim();
+
+            String value = line.substring(i + 1);
+            if (value.contains("\"")) {
+                intLine.value = decode_stringed_int(value);
+                return intLine;
+            }
+
+            value = value.replace("<", "")
+                    .replace(">", "")
+                    .replace(";", "");
+
+            if (value.contains("0x")) {
+                value = value.replace("0x", "").trim();
+                intLine.value = Long.parseLong(value, 16);
+            } else {
+                value = value.trim();
+                intLine.value = Long.parseLong(value);
+            }
+            return intLine;
+        }
+
+        static DtsHelper.hexLine decode_hex_line(String line) throws Exception {
+            DtsHelper.hexLine hexLine = new DtsHelper.hexLine();
+            line = line.trim();
+            int i = line.indexOf('=');
+            if (i < 0)
+                throw new Exception();
+            hexLine.name = line.substring(0, i).trim();
+
+            String value = line.substring(i + 1);
+            hexLine.value = value.replace("<", "")
+                    .replace(">", "")
+                    .replace(";", "").trim();
+            return hexLine;
+        }
+    }
+}